@@ -0,0 +1,64 @@
+package TelegramBot.TumblrTagTracker.bot.commands;
+
+import TelegramBot.TumblrTagTracker.models.Subscription;
+import TelegramBot.TumblrTagTracker.services.SubscriptionService;
+import TelegramBot.TumblrTagTracker.util.BotExceptionHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+@Component
+public class DigestCommand implements Command {
+
+    private final SubscriptionService subscriptionService;
+
+    @Autowired
+    public DigestCommand(SubscriptionService subscriptionService) {
+        this.subscriptionService = subscriptionService;
+    }
+
+    @Override
+    public void execute(Long chatID, String[] args, SendMessage response) {
+        if (!subscriptionService.isSubscribed(chatID)) {
+            response.setText("Сначала нужно подписаться!");
+            return;
+        }
+
+        if (args.length == 0) {
+            boolean digest = subscriptionService.getDeliveryMode(chatID) == Subscription.DeliveryMode.DIGEST;
+            response.setText((digest ? "Сейчас включён режим дайджеста." : "Сейчас посты приходят по одному.") + "\n\n" +
+                    "`/digest on` - присылать посты пачками: до 10 фото/видео одним альбомом, текстовые посты одним сообщением;\n" +
+                    "`/digest off` - присылать посты по одному.");
+            response.setParseMode("Markdown");
+            return;
+        }
+
+        Subscription.DeliveryMode mode;
+        switch (args[0].toLowerCase()) {
+            case "on":
+                mode = Subscription.DeliveryMode.DIGEST;
+                break;
+            case "off":
+                mode = Subscription.DeliveryMode.INSTANT;
+                break;
+            default:
+                response.setText("Используйте `/digest on` или `/digest off`.");
+                response.setParseMode("Markdown");
+                return;
+        }
+
+        try {
+            subscriptionService.updateDeliveryMode(chatID, mode);
+            response.setText(mode == Subscription.DeliveryMode.DIGEST
+                    ? "Режим дайджеста включён! Новые посты будут приходить пачками."
+                    : "Режим дайджеста выключен. Посты будут приходить по одному.");
+        } catch (Exception e) {
+            BotExceptionHandler.handleException(e, chatID, response);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "/digest";
+    }
+}
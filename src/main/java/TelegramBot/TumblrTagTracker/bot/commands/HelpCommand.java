@@ -22,11 +22,19 @@ public class HelpCommand implements Command {
             `/tag remove` - удалить определённые теги;
             `/tag clear` - очистить все теги сразу;
             `/tag list` - показать текущие теги;
+            `/tag filter add` - добавить фильтр-выражение с AND, OR, NOT и скобками;
+            `/tag filter remove` - удалить фильтр по номеру;
+            `/tag filter list` - показать фильтры;
+            
+            *Доставка:*
+            `/digest on` - получать посты пачками: фото и видео альбомами, текстовые посты одним сообщением;
+            `/digest off` - получать посты по одному.
             
             *Примеры использования тегов:*
             • `/tag add "lord of the mysteries" ersatz` - получать посты с тегами "lord of the mysteries" и ersatz (используйте кавычки для тегов с пробелами, для однословных тегов можно не использовать кавычки);
             • `/tag remove "lord of the mysteries"` - перестать получать посты с тегом "lord of the mysteries";
             • `/tag clear` - очистить все теги сразу.
+            • `/tag filter add "lord of the mysteries" AND fanart NOT nsfw` - получать фанарт по тегу, но без nsfw.
             
             *Справка:*
             • Вы не будете получать посты от этого бота, пока не добавите хотя бы один тег
@@ -2,13 +2,16 @@ package TelegramBot.TumblrTagTracker.bot.commands;
 
 import TelegramBot.TumblrTagTracker.services.SubscriptionService;
 import TelegramBot.TumblrTagTracker.util.BotExceptionHandler;
+import TelegramBot.TumblrTagTracker.util.TagExpression;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -18,6 +21,7 @@ public class TagCommand implements Command {
 
     private static final int MAX_LENGTH = 150;
     private static final int MAX_TAGS_PER_USER = 100;
+    private static final int MAX_FILTERS_PER_USER = 10;
     private static final Pattern VALID_TAG_PATTERN = Pattern.compile("^[a-zA-Z0-9\\s-]+$");
     private final SubscriptionService subscriptionService;
 
@@ -53,6 +57,9 @@ public class TagCommand implements Command {
             case "list":
                 showCurrentTags(chatID, response);
                 break;
+            case "filter":
+                handleFilter(chatID, Arrays.copyOfRange(args, 1, args.length), response);
+                break;
             default:
                 response.setText("Увы, я не знаю такую команду. :( Воспользуйтесь /help для списка команд.");
                 response.setParseMode("Markdown");
@@ -79,6 +86,8 @@ public class TagCommand implements Command {
         message.append("`/tag add ersatz` - добавить теги без пробелов;\n");
         message.append("`/tag remove \"lord of the mysteries\"` - убрать один определённый тег;\n");
         message.append("`/tag clear` - очистить все теги;\n");
+        message.append("`/tag filter add \"lord of the mysteries\" AND fanart NOT nsfw` - добавить фильтр-выражение;\n");
+        message.append("`/tag filter list` - показать фильтры;\n");
         message.append("\n*Примечание:* Для тегов с пробелами используйте кавычки: `/tag add \"lord of the mysteries\"`. Для однословных тегов можно не использовать кавычки. Без тегов вы не будете получать посты.");
 
         response.setText(message.toString());
@@ -184,6 +193,76 @@ public class TagCommand implements Command {
         }
     }
 
+    // /tag filter add <выражение> | remove <номер> | clear | list
+    private void handleFilter(Long chatID, String[] args, SendMessage response) {
+        String action = args.length > 0 ? args[0].toLowerCase() : "list";
+        List<String> filters = new ArrayList<>(subscriptionService.getFilters(chatID));
+        filters.sort(null);
+
+        try {
+            switch (action) {
+                case "add" -> {
+                    if (args.length < 2) {
+                        response.setText("Укажите выражение: `/tag filter add \"lord of the mysteries\" AND fanart NOT nsfw`");
+                        response.setParseMode("Markdown");
+                        return;
+                    }
+                    TagExpression expression = TagExpression.parse(Arrays.asList(args).subList(1, args.length));
+                    for (String tag : expression.tags()) {
+                        if (tag.length() > MAX_LENGTH || !VALID_TAG_PATTERN.matcher(tag).matches()) {
+                            response.setText("Тег \"" + tag + "\" слишком длинный или содержит недопустимые символы.");
+                            return;
+                        }
+                    }
+                    if (filters.size() >= MAX_FILTERS_PER_USER) {
+                        response.setText("Превышен лимит фильтров (" + MAX_FILTERS_PER_USER + ")");
+                        return;
+                    }
+                    filters.add(expression.toString());
+                    subscriptionService.updateFilters(chatID, new HashSet<>(filters));
+                    response.setText("Фильтр добавлен: " + expression);
+                }
+                case "remove" -> {
+                    int index = args.length > 1 ? parseIndex(args[1]) : -1;
+                    if (index < 1 || index > filters.size()) {
+                        response.setText("Укажите номер фильтра из списка `/tag filter list`.");
+                        response.setParseMode("Markdown");
+                        return;
+                    }
+                    String removed = filters.remove(index - 1);
+                    subscriptionService.updateFilters(chatID, new HashSet<>(filters));
+                    response.setText("Фильтр удалён: " + removed);
+                }
+                case "clear" -> {
+                    subscriptionService.updateFilters(chatID, new HashSet<>());
+                    response.setText("Все фильтры удалены.");
+                }
+                default -> {
+                    StringBuilder message = new StringBuilder("Ваши фильтры:\n");
+                    if (filters.isEmpty()) {
+                        message.append("пока нет ни одного.\n");
+                    }
+                    for (int i = 0; i < filters.size(); i++) {
+                        message.append(i + 1).append(". ").append(filters.get(i)).append("\n");
+                    }
+                    message.append("\nОператоры AND, OR, NOT пишутся заглавными, скобки группируют условия. ")
+                            .append("Пример: /tag filter add \"lord of the mysteries\" AND fanart NOT nsfw");
+                    response.setText(message.toString());
+                }
+            }
+        } catch (Exception e) {
+            BotExceptionHandler.handleException(e, chatID, response);
+        }
+    }
+
+    private int parseIndex(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private void clearTags(Long chatID, SendMessage response) {
         try {
             subscriptionService.updateTags(chatID, new HashSet<>());
@@ -0,0 +1,319 @@
+package TelegramBot.TumblrTagTracker.clients;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.util.TumblrApiException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.tumblr.jumblr.types.Post;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+// Лёгкий клиент /v2/tagged поверх java.net.http.HttpClient (HTTP/2, keep-alive).
+// Ответ разбирается потоково прямо в TumblrPostDTO, читаются только нужные нам поля,
+// остальное пропускается без построения объектов.
+public class HttpTaggedPostsClient implements TaggedPostsClient {
+
+    private static final String TAGGED_URL = "https://api.tumblr.com/v2/tagged";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final HttpClient httpClient;
+    private final String apiKey;
+    private final Function<Collection<String>, int[]> tagResolver;
+
+    // tagResolver переводит имена тегов поста в id словаря, имена в DTO не попадают
+    public HttpTaggedPostsClient(HttpClient httpClient, String apiKey, Function<Collection<String>, int[]> tagResolver) {
+        this.httpClient = httpClient;
+        this.apiKey = apiKey;
+        this.tagResolver = tagResolver;
+    }
+
+    @Override
+    public List<TumblrPostDTO> tagged(String tag, int limit) {
+        URI uri = URI.create(TAGGED_URL
+                + "?tag=" + URLEncoder.encode(tag, StandardCharsets.UTF_8)
+                + "&limit=" + limit
+                + "&api_key=" + URLEncoder.encode(apiKey, StandardCharsets.UTF_8));
+
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    body.transferTo(OutputStream.nullOutputStream());
+                    throw new TumblrApiException("Tumblr API вернул статус " + response.statusCode() + " по тегу '" + tag + "'",
+                            response.statusCode());
+                }
+                return parseTaggedResponse(body);
+            }
+
+        } catch (IOException e) {
+            throw new TumblrApiException("Ошибка при обращении к Tumblr API по тегу '" + tag + "'", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TumblrApiException("Запрос к Tumblr API по тегу '" + tag + "' прерван", e);
+        }
+    }
+
+    private List<TumblrPostDTO> parseTaggedResponse(InputStream body) throws IOException {
+        List<TumblrPostDTO> posts = new ArrayList<>();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new TumblrApiException("Некорректный ответ Tumblr API");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("response".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        posts.add(readPost(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return posts;
+    }
+
+    // Парсер стоит на START_OBJECT поста
+    private TumblrPostDTO readPost(JsonParser parser) throws IOException {
+        RawPost raw = new RawPost();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            if (value == JsonToken.START_ARRAY || value == JsonToken.START_OBJECT) {
+                switch (field) {
+                    case "tags" -> raw.tags = readStringArray(parser);
+                    case "photos" -> raw.photoUrl = readFirstPhotoUrl(parser);
+                    case "player" -> raw.embedCode = readFirstEmbedCode(parser);
+                    default -> parser.skipChildren();
+                }
+                continue;
+            }
+
+            switch (field) {
+                case "id" -> raw.id = parser.getValueAsLong();
+                case "reblogged_root_id" -> raw.rebloggedRootId = parser.getValueAsLong(); // приходит строкой
+                case "blog_name" -> raw.blogName = parser.getValueAsString();
+                case "post_url" -> raw.postUrl = parser.getValueAsString();
+                case "type" -> raw.type = parser.getValueAsString();
+                case "timestamp" -> raw.timestamp = parser.getValueAsLong();
+                case "note_count" -> raw.noteCount = parser.getValueAsInt();
+                case "title" -> raw.title = parser.getValueAsString();
+                case "body" -> raw.body = parser.getValueAsString();
+                case "caption" -> raw.caption = parser.getValueAsString();
+                case "source_url" -> raw.sourceUrl = parser.getValueAsString();
+                case "text" -> raw.text = parser.getValueAsString();
+                case "source" -> raw.source = parser.getValueAsString();
+                case "url" -> raw.url = parser.getValueAsString();
+                case "description" -> raw.description = parser.getValueAsString();
+                case "question" -> raw.question = parser.getValueAsString();
+                case "answer" -> raw.answer = parser.getValueAsString();
+                default -> {
+                    // остальные скалярные поля нам не нужны
+                }
+            }
+        }
+
+        return raw.toDTO(tagResolver);
+    }
+
+    private List<String> readStringArray(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return values;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    // photos[0].original_size.url
+    private String readFirstPhotoUrl(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String url = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if (url == null && "original_size".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String sizeField = parser.currentName();
+                        parser.nextToken();
+                        if ("url".equals(sizeField)) {
+                            url = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return url;
+    }
+
+    // player[0].embed_code - так же, как это делает Jumblr для VideoPost
+    private String readFirstEmbedCode(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String embedCode = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (embedCode == null && "embed_code".equals(field)) {
+                    embedCode = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return embedCode;
+    }
+
+    // Сырые поля поста до раскладки по типам
+    private static class RawPost {
+        long id;
+        long rebloggedRootId;
+        String blogName;
+        String postUrl;
+        String type;
+        Long timestamp;
+        Integer noteCount;
+        List<String> tags;
+        String title;
+        String body;
+        String caption;
+        String sourceUrl;
+        String text;
+        String source;
+        String url;
+        String description;
+        String question;
+        String answer;
+        String photoUrl;
+        String embedCode;
+
+        // Та же раскладка, что и в JumblrTaggedPostsClient.convertToDTO
+        TumblrPostDTO toDTO(Function<Collection<String>, int[]> tagResolver) {
+            TumblrPostDTO dto = new TumblrPostDTO();
+
+            dto.setId(id);
+            dto.setRebloggedRootId(rebloggedRootId);
+            dto.setBlogName(blogName);
+            dto.setPostURL(postUrl);
+            dto.setTagIds(tagResolver.apply(tags));
+
+            if (timestamp != null) {
+                dto.setTimestamp(timestamp);
+            }
+
+            if (noteCount != null) {
+                dto.setNoteCount(noteCount);
+            }
+
+            Post.PostType postType = parseType(type);
+            dto.setType(postType);
+
+            if (postType == null) {
+                dto.setContent(type + " post", null);
+                return dto;
+            }
+
+            switch (postType) {
+                case TEXT:
+                    dto.setContent(title, body);
+                    break;
+
+                case PHOTO:
+                    dto.setPhotoUrl(photoUrl);
+                    dto.setContent(caption, caption);
+                    dto.setSourceUrl(sourceUrl);
+                    break;
+
+                case VIDEO:
+                    dto.setVideoUrl(embedCode);
+                    dto.setContent(caption, caption);
+                    dto.setSourceUrl(sourceUrl);
+                    break;
+
+                case QUOTE:
+                    dto.setContent(source, text);
+                    break;
+
+                case LINK:
+                    dto.setContent(title, description);
+                    dto.setSourceUrl(url);
+                    break;
+
+                case ANSWER:
+                    dto.setAnswer(question, answer);
+                    break;
+
+                default:
+                    dto.setContent(postType + " post", null);
+                    break;
+            }
+
+            return dto;
+        }
+
+        private static Post.PostType parseType(String type) {
+            if (type == null) {
+                return null;
+            }
+            try {
+                return Post.PostType.valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
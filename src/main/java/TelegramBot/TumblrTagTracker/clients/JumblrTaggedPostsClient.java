@@ -0,0 +1,118 @@
+package TelegramBot.TumblrTagTracker.clients;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import com.tumblr.jumblr.JumblrClient;
+import com.tumblr.jumblr.types.*;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Клиент на базе Jumblr: полные объекты Post через Gson, затем копирование в TumblrPostDTO
+public class JumblrTaggedPostsClient implements TaggedPostsClient {
+
+    private final JumblrClient client;
+    private final Function<Collection<String>, int[]> tagResolver;
+
+    // tagResolver переводит имена тегов поста в id словаря, имена в DTO не попадают
+    public JumblrTaggedPostsClient(JumblrClient client, Function<Collection<String>, int[]> tagResolver) {
+        this.client = client;
+        this.tagResolver = tagResolver;
+    }
+
+    @Override
+    public List<TumblrPostDTO> tagged(String tag, int limit) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("limit", limit);
+
+        return client.tagged(tag, options).stream().map(this::convertToDTO).collect(Collectors.toList());
+    }
+
+    private TumblrPostDTO convertToDTO(Post post) {
+        TumblrPostDTO dto = new TumblrPostDTO();
+
+        if (post.getId() != null) {
+            dto.setId(post.getId());
+        }
+        dto.setBlogName(post.getBlogName());
+        dto.setPostURL(post.getPostUrl());
+
+        if (post.getTimestamp() != null) {
+            dto.setTimestamp(post.getTimestamp());
+        }
+
+        if (post.getNoteCount() != null) {
+            dto.setNoteCount(post.getNoteCount().intValue());
+        }
+
+        dto.setType(post.getType());
+        dto.setTagIds(tagResolver.apply(post.getTags()));
+
+        // В зависимости от типа поста извлекаем разные данные.
+        // Текст сразу чистится и обрезается, картинку и видео из тела ищем только при отправке.
+        switch (post.getType()) {
+
+            case TEXT:
+                TextPost textPost = (TextPost) post;
+                dto.setContent(textPost.getTitle(), textPost.getBody());
+                break;
+
+            case PHOTO:
+                PhotoPost photoPost = (PhotoPost) post;
+                if (photoPost.getPhotos() != null && !photoPost.getPhotos().isEmpty()) {
+                    Photo photo = photoPost.getPhotos().getFirst();
+                    if (photo != null && photo.getOriginalSize() != null) {
+                        dto.setPhotoUrl(photo.getOriginalSize().getUrl());
+                    }
+                }
+                dto.setContent(photoPost.getCaption(), photoPost.getCaption());
+                if (photoPost.getSourceUrl() != null) {
+                    dto.setSourceUrl(photoPost.getSourceUrl());
+                }
+                break;
+
+            case VIDEO:
+                VideoPost videoPost = (VideoPost) post;
+                if (videoPost.getVideos() != null && !videoPost.getVideos().isEmpty()) {
+                    Video video = videoPost.getVideos().getFirst();
+                    if (video != null) {
+                        dto.setVideoUrl(video.getEmbedCode());
+                    }
+                }
+
+                dto.setContent(videoPost.getCaption(), videoPost.getCaption());
+
+                if (videoPost.getSourceUrl() != null) {
+                    dto.setSourceUrl(videoPost.getSourceUrl());
+                }
+                break;
+
+            case QUOTE:
+                QuotePost quotePost = (QuotePost) post;
+                dto.setContent(quotePost.getSource(), quotePost.getText());
+                break;
+
+            case LINK:
+                LinkPost linkPost = (LinkPost) post;
+                dto.setContent(linkPost.getTitle(), linkPost.getDescription());
+                if (linkPost.getLinkUrl() != null) {
+                    dto.setSourceUrl(linkPost.getLinkUrl());
+                }
+                break;
+
+            case ANSWER:
+                AnswerPost answerPost = (AnswerPost) post;
+                dto.setAnswer(answerPost.getQuestion(), answerPost.getAnswer());
+                break;
+
+            default:
+                dto.setContent(post.getType() + " post", null);
+                break;
+        }
+
+        return dto;
+    }
+}
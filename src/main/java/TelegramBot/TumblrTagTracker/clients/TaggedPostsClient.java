@@ -0,0 +1,12 @@
+package TelegramBot.TumblrTagTracker.clients;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+
+import java.util.List;
+
+// Клиент эндпоинта /v2/tagged. Реализации взаимозаменяемы,
+// выбираются настройкой tumblr.client.type
+public interface TaggedPostsClient {
+
+    List<TumblrPostDTO> tagged(String tag, int limit);
+}
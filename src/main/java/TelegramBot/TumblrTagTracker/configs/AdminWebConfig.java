@@ -0,0 +1,43 @@
+package TelegramBot.TumblrTagTracker.configs;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Доступ к /admin/** по заголовку X-Admin-Token. Без ADMIN_TOKEN админский API выключен (404).
+@Configuration
+public class AdminWebConfig implements WebMvcConfigurer {
+
+    private static final String TOKEN_HEADER = "X-Admin-Token";
+
+    @Value("${admin.token:}")
+    private String adminToken;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (adminToken.isBlank()) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return false;
+                }
+                String token = request.getHeader(TOKEN_HEADER);
+                // Сравнение за постоянное время, чтобы токен нельзя было подобрать по задержке ответа
+                if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                        adminToken.getBytes(StandardCharsets.UTF_8))) {
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    return false;
+                }
+                return true;
+            }
+        }).addPathPatterns("/admin/**");
+    }
+}
@@ -4,23 +4,30 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
     @Bean(name = "userExecutor")
-    public ExecutorService userExecutor() {
-        return new ThreadPoolExecutor(
-                5,      // 5 постоянных потоков
-                20,     // максимум 20 потоков
+    public ThreadPoolExecutor userExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                20,     // до 20 потоков: DeliveryWorker забирает записи только под свободные потоки,
+                20,     // поэтому пул должен расти сразу, а не копить задачи в очереди
                 60L, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(100), // Очередь на 100 задач
-                new ThreadPoolExecutor.CallerRunsPolicy() // Политика отказа
+                runnable -> new Thread(runnable, "delivery-" + threadNumber.incrementAndGet()),
+                // Отправку никогда не выполняет поток планировщика: лишняя задача отклоняется,
+                // а её записи возвращаются в персистентную очередь доставки (DeliveryWorker)
+                new ThreadPoolExecutor.AbortPolicy()
         );
+        // Простаивающие потоки всё так же завершаются через 60 секунд
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 }
@@ -0,0 +1,54 @@
+package TelegramBot.TumblrTagTracker.configs;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Таблицы, созданные с auto-increment id, уже содержат строки. Hibernate создаёт строку
+// генератора с 1, и первые блоки id совпали бы с существующими ключами. Поэтому при старте
+// поднимаем next_val не ниже MAX(id) + размер блока. Запрос идемпотентен и безопасен
+// при одновременном старте нескольких инстансов: значение только растёт.
+@Component
+@Lazy(false)
+@DependsOn("entityManagerFactory")
+public class IdGeneratorSeeder {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+
+    // Должен совпадать с allocationSize в @TableGenerator: pooled-оптимизатор выдаёт
+    // блок (next_val - allocationSize, next_val]
+    static final int ALLOCATION_SIZE = 50;
+
+    // Значение генератора (pkColumnValue) -> таблица сущности
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "user_post_delivery", "user_post_delivery",
+            "delivery_outbox", "delivery_outbox");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdGeneratorSeeder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void seed() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS id_generators "
+                + "(sequence_name VARCHAR(255) NOT NULL PRIMARY KEY, next_val BIGINT)");
+
+        SEQUENCES.forEach((sequence, table) -> {
+            // Вставка и подъём - отдельными запросами: INSERT ... ON DUPLICATE KEY UPDATE от двух
+            // инстансов на ещё не существующий ключ может закончиться взаимной блокировкой в InnoDB
+            jdbcTemplate.update("INSERT IGNORE INTO id_generators (sequence_name, next_val) VALUES (?, 0)", sequence);
+            jdbcTemplate.update("UPDATE id_generators SET next_val = GREATEST(next_val, "
+                    + "(SELECT COALESCE(MAX(id), 0) + ? FROM " + table + ")) WHERE sequence_name = ?",
+                    ALLOCATION_SIZE, sequence);
+            log.debug("Генератор id {} выровнен по таблице {}", sequence, table);
+        });
+    }
+}
@@ -0,0 +1,42 @@
+package TelegramBot.TumblrTagTracker.configs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// Отдельные пулы (полосы) для разных видов задач: долгая повторная проверка метрик
+// или ночная очистка не задерживают проверку новых постов и разбор очереди доставки.
+// Задача выбирает полосу атрибутом scheduler в @Scheduled.
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Частые короткие опросы: очередь доставки, догонялка снимка подписок. Полоса по умолчанию.
+    @Bean(name = {"pollingScheduler", "taskScheduler"})
+    public ThreadPoolTaskScheduler pollingScheduler(@Value("${scheduling.lanes.polling.pool-size:2}") int poolSize) {
+        return lane("polling-", poolSize);
+    }
+
+    // Проверка новых постов - то, от чего зависит задержка появления постов у пользователей
+    @Bean(name = "checkScheduler")
+    public ThreadPoolTaskScheduler checkScheduler(@Value("${scheduling.lanes.check.pool-size:1}") int poolSize) {
+        return lane("check-", poolSize);
+    }
+
+    // Обслуживание: отложенные посты, повторная проверка метрик, очистка
+    @Bean(name = "maintenanceScheduler")
+    public ThreadPoolTaskScheduler maintenanceScheduler(@Value("${scheduling.lanes.maintenance.pool-size:2}") int poolSize) {
+        return lane("maintenance-", poolSize);
+    }
+
+    private static ThreadPoolTaskScheduler lane(String threadNamePrefix, int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+}
@@ -1,11 +1,28 @@
 package TelegramBot.TumblrTagTracker.configs;
 
+import TelegramBot.TumblrTagTracker.clients.HttpTaggedPostsClient;
+import TelegramBot.TumblrTagTracker.clients.JumblrTaggedPostsClient;
+import TelegramBot.TumblrTagTracker.clients.TaggedPostsClient;
+import TelegramBot.TumblrTagTracker.services.TagDictionary;
+import TelegramBot.TumblrTagTracker.services.TumblrClientPool;
+import TelegramBot.TumblrTagTracker.services.TumblrRateLimiterService;
+import TelegramBot.TumblrTagTracker.util.TumblrApiException;
 import com.tumblr.jumblr.JumblrClient;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.DigestUtils;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class TumblrConfig {
@@ -18,13 +35,75 @@ public class TumblrConfig {
     @Value("${tumblr.api.secret}")
     private String apiSecret;
 
+    // Дополнительные ключи в формате key1:secret1,key2:secret2
+    @Value("${tumblr.api.extra-credentials:}")
+    private String extraCredentials;
+
+    // jumblr - через Jumblr/Gson, http - лёгкий клиент на java.net.http с потоковым разбором JSON
+    @Value("${tumblr.client.type:jumblr}")
+    private String clientType;
+
     @Bean
-    public JumblrClient tumblrClient() {
+    public TumblrClientPool tumblrClientPool(TumblrRateLimiterService rateLimiter,
+                                             CircuitBreakerRegistry circuitBreakerRegistry,
+                                             TagDictionary tagDictionary) {
+        List<String[]> credentials = new ArrayList<>();
+        credentials.add(new String[]{apiKey, apiSecret});
+
+        if (extraCredentials != null && !extraCredentials.isBlank()) {
+            for (String pair : extraCredentials.split(",")) {
+                String[] parts = pair.trim().split(":", 2);
+                if (parts[0].isBlank()) {
+                    continue;
+                }
+                credentials.add(new String[]{parts[0].trim(), parts.length > 1 ? parts[1].trim() : ""});
+            }
+        }
+
+        // Один HttpClient на все ключи: общий пул соединений и HTTP/2 мультиплексирование
+        HttpClient httpClient = "http".equalsIgnoreCase(clientType)
+                ? HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .build()
+                : null;
+
+        // Ответы про сам тег (4xx) отправляют в карантин тег, а не ключ: иначе несколько мёртвых
+        // тегов открыли бы circuit breaker исправного ключа и оборвали цикл
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig
+                .from(circuitBreakerRegistry.getConfiguration("tumblr-client")
+                        .orElse(circuitBreakerRegistry.getDefaultConfig()))
+                .ignoreException(TumblrApiException::isTagSpecific)
+                .build();
+
+        List<TumblrClientPool.PooledClient> clients = new ArrayList<>();
+        for (int i = 0; i < credentials.size(); i++) {
+            String key = credentials.get(i)[0];
+            String secret = credentials.get(i)[1];
+            String name = "key-" + (i + 1);
+
+            // Имя бакета выводим из ключа, чтобы все инстансы делили один лимит на ключ
+            String bucket = "tumblr-api:" + DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)).substring(0, 12);
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("tumblr-" + name, circuitBreakerConfig);
+
+            // Теги постов только ищутся в словаре: произвольные теги Tumblr не пишутся в таблицу tags,
+            // а тег, на который никто не подписан, ни с кем не совпадёт
+            TaggedPostsClient client = httpClient != null
+                    ? new HttpTaggedPostsClient(httpClient, key, tagDictionary::idsIfKnown)
+                    : new JumblrTaggedPostsClient(createJumblrClient(key, secret), tagDictionary::idsIfKnown);
+
+            clients.add(new TumblrClientPool.PooledClient(name, bucket, client, circuitBreaker));
+        }
+
+        log.info("Инициализировано {} клиентов Tumblr API (тип: {})", clients.size(), clientType);
+        return new TumblrClientPool(clients, rateLimiter);
+    }
 
+    private JumblrClient createJumblrClient(String key, String secret) {
         try {
             JumblrClient client;
-            if (apiSecret != null && !apiSecret.trim().isEmpty()) {
-                client = new JumblrClient(apiKey, apiSecret);
+            if (secret != null && !secret.trim().isEmpty()) {
+                client = new JumblrClient(key, secret);
             } else {
                 log.info("apiSecret оказался пустым/null");
                 client = new JumblrClient();
@@ -0,0 +1,102 @@
+package TelegramBot.TumblrTagTracker.controllers;
+
+import TelegramBot.TumblrTagTracker.schedulers.DeliveryWorker;
+import TelegramBot.TumblrTagTracker.schedulers.JobRunner;
+import TelegramBot.TumblrTagTracker.services.*;
+import TelegramBot.TumblrTagTracker.util.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.*;
+
+// Админский API только для чтения: состояние конвейера, очередей и лимитов.
+// Всё берётся из счётчиков в памяти, запрос не сканирует таблицы. Доступ - по токену (AdminWebConfig).
+@RestController
+@RequestMapping("/admin/stats")
+public class AdminStatsController {
+
+    private final TumblrClientPool tumblrClientPool;
+    private final TagHealthTracker tagHealthTracker;
+    private final TagDictionary tagDictionary;
+    private final SubscriptionSnapshot subscriptionSnapshot;
+    private final PostPipeline postPipeline;
+    private final PostTrackingService postTrackingService;
+    private final DeliveryOutboxService deliveryOutboxService;
+    private final DeliveryWorker deliveryWorker;
+    private final JobRunner jobRunner;
+
+    public record Overview(int apiPermitsRemaining, int apiKeys, int subscribers, int knownTags,
+                           Map<String, Integer> pipelineQueues, PostTrackingService.PendingCount readyToSend,
+                           PostTrackingService.PendingCount awaitingRecheck, int outboxUsers, long outboxQueued,
+                           DeliveryWorker.AdmissionStats admission, Latency deliveryLatency,
+                           Map<String, JobRunner.JobStats> jobs) {
+    }
+
+    public record Latency(long count, Duration p50, Duration p99) {
+    }
+
+    public record UserQueue(Long userId, int queued) {
+    }
+
+    @Autowired
+    public AdminStatsController(TumblrClientPool tumblrClientPool, TagHealthTracker tagHealthTracker,
+                                TagDictionary tagDictionary, SubscriptionSnapshot subscriptionSnapshot,
+                                PostPipeline postPipeline, PostTrackingService postTrackingService,
+                                DeliveryOutboxService deliveryOutboxService, DeliveryWorker deliveryWorker,
+                                JobRunner jobRunner) {
+        this.tumblrClientPool = tumblrClientPool;
+        this.tagHealthTracker = tagHealthTracker;
+        this.tagDictionary = tagDictionary;
+        this.subscriptionSnapshot = subscriptionSnapshot;
+        this.postPipeline = postPipeline;
+        this.postTrackingService = postTrackingService;
+        this.deliveryOutboxService = deliveryOutboxService;
+        this.deliveryWorker = deliveryWorker;
+        this.jobRunner = jobRunner;
+    }
+
+    @GetMapping
+    public Overview overview() {
+        Map<Long, Integer> queued = deliveryOutboxService.queuedPerUser();
+        LatencyHistogram latency = deliveryWorker.deliveryLatency();
+
+        return new Overview(
+                tumblrClientPool.getLastSeenPermits(),
+                tumblrClientPool.size(),
+                subscriptionSnapshot.subscriberIndex().size(),
+                tagDictionary.size(),
+                postPipeline.queueDepths(),
+                postTrackingService.readyToSendCount(),
+                postTrackingService.awaitingRecheckCount(),
+                queued.size(),
+                queued.values().stream().mapToLong(Integer::longValue).sum(),
+                deliveryWorker.admissionStats(),
+                new Latency(latency.count(), latency.percentile(0.5), latency.percentile(0.99)),
+                jobRunner.stats());
+    }
+
+    // Теги по убыванию отставания: сверху те, что дольше всех не запрашивались
+    @GetMapping("/tags")
+    public List<TagHealthTracker.TagStatus> tags() {
+        return tagHealthTracker.snapshot();
+    }
+
+    // Пользователи с самой длинной очередью доставки
+    @GetMapping("/queues")
+    public List<UserQueue> queues(@RequestParam(defaultValue = "50") int limit) {
+        return deliveryOutboxService.queuedPerUser().entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(Math.max(0, limit))
+                .map(entry -> new UserQueue(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    @GetMapping("/jobs")
+    public Map<String, JobRunner.JobStats> jobs() {
+        return jobRunner.stats();
+    }
+}
@@ -1,56 +1,125 @@
 package TelegramBot.TumblrTagTracker.dto;
 
+import TelegramBot.TumblrTagTracker.util.ContentExtractor;
 import TelegramBot.TumblrTagTracker.util.HtmlDecoder;
+import TelegramBot.TumblrTagTracker.util.PostFingerprint;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.tumblr.jumblr.types.Post;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.List;
-
+// Пост в том виде, в каком он живёт в памяти от сбора до рассылки. Сотни таких объектов
+// на тег держатся до конца цикла, поэтому HTML чистится и обрезается сразу при получении
+// до того, что может попасть в сообщение, числа хранятся примитивами, а теги - только id
+// из TagDictionary (имена по ним берутся там, где их показывают).
 @Setter
 @Getter
 public class TumblrPostDTO {
-    private String id;
+
+    public static final int UNKNOWN_NOTE_COUNT = -1;
+
+    // Длиннее в сообщение не попадёт: getFormattedMessage обрезает по этим границам.
+    // Храним на символ больше, чтобы он знал, что текст был обрезан.
+    private static final int MAX_TEXT_LENGTH = 500;
+    private static final int MAX_ANSWER_LENGTH = 400;
+
+    private long id; // 0 - неизвестен
+    private long rebloggedRootId; // id исходного поста, если это реблог; 0 - не реблог
+    private String fingerprint; // см. PostFingerprint
     private String blogName;
     private String postURL;
-    private String summary;
-    private String body;
-    private List<String> tags;
-    private Long timestamp;
+    private String text; // очищенный текст (заголовок или тело), см. setContent
+    private String questionText; // для постов типа answer, очищенный
+    private String answerText; // для постов типа answer, очищенный
+    private String mediaHtml; // теги <img>/<video> из тела поста, см. getPreview
+    private int[] tagIds; // отсортированные id из TagDictionary, незнакомые словарю теги отброшены
+    private long timestamp; // секунды, 0 - неизвестно
+    private int noteCount = UNKNOWN_NOTE_COUNT;
     private Post.PostType type; // text, photo, quote, link, video, answer
-    private String photoUrl; // для фото постов
+    private String photoUrl; // для фото постов; у текстовых ищется в mediaHtml при первом обращении к getPreview
     private String videoUrl;
     private String sourceUrl; // для ссылок
-    private String noteCount;
-    private String question; // для постов типа answer
-    private String answer; // для постов типа answer
+
+    // Хеш полного содержимого до обрезки - из него строится fingerprint; null, если тела поста нет
+    // (один заголовок или подпись-заглушка ничего не говорят о содержимом)
+    @Setter(AccessLevel.NONE)
+    private transient String contentHash;
+
+    // Медиа для отправки. Разбор HTML дорогой, а до отправки доходит малая часть
+    // собранных постов, поэтому считаем один раз при первом обращении, а не при получении из API.
+    @Setter(AccessLevel.NONE)
+    private transient volatile Preview preview;
 
     private static HtmlDecoder htmlDecoder = new HtmlDecoder();
+    private static ContentExtractor contentExtractor = new ContentExtractor();
+
+    public record Preview(String photoUrl, String videoUrl) {
+    }
+
+    public Preview getPreview() {
+        Preview current = preview;
+        if (current == null) {
+            current = new Preview(
+                    photoUrl != null && !photoUrl.isEmpty() ? photoUrl : contentExtractor.extractFirstImageUrl(mediaHtml).orElse(null),
+                    videoUrl != null && !videoUrl.isEmpty() ? videoUrl : contentExtractor.extractFirstVideoUrl(mediaHtml).orElse(null));
+            preview = current;
+        }
+        return current;
+    }
+
+    // Текст поста: заголовок, если он есть, иначе тело. Из тела сохраняем только теги медиа.
+    public void setContent(String summary, String body) {
+        String cleanSummary = clean(summary, MAX_TEXT_LENGTH);
+        this.text = cleanSummary != null ? cleanSummary : clean(body, MAX_TEXT_LENGTH);
+        this.mediaHtml = contentExtractor.extractMediaTags(body);
+        this.contentHash = body != null && !body.isBlank()
+                ? PostFingerprint.contentHash(summary, body, mediaHtml) : null;
+    }
+
+    public void setAnswer(String question, String answer) {
+        this.questionText = clean(question, MAX_ANSWER_LENGTH);
+        this.answerText = clean(answer, MAX_ANSWER_LENGTH);
+        this.contentHash = answer != null && !answer.isBlank()
+                ? PostFingerprint.contentHash(question, answer, null) : null;
+    }
+
+    // Тот же пост под другим id и с другим набором тегов (реблог, схлопнутый в исходный пост)
+    public TumblrPostDTO copyAs(long id, int[] tagIds) {
+        TumblrPostDTO copy = new TumblrPostDTO();
+        copy.id = id;
+        copy.rebloggedRootId = rebloggedRootId;
+        copy.fingerprint = fingerprint;
+        copy.blogName = blogName;
+        copy.postURL = postURL;
+        copy.text = text;
+        copy.questionText = questionText;
+        copy.answerText = answerText;
+        copy.mediaHtml = mediaHtml;
+        copy.tagIds = tagIds;
+        copy.timestamp = timestamp;
+        copy.noteCount = noteCount;
+        copy.type = type;
+        copy.photoUrl = photoUrl;
+        copy.videoUrl = videoUrl;
+        copy.sourceUrl = sourceUrl;
+        copy.contentHash = contentHash;
+        copy.preview = preview;
+        return copy;
+    }
 
     public String getFormattedMessage() {
         StringBuilder message = new StringBuilder();
 
         // специальная обработка для постов типа answer
-        if (type == Post.PostType.ANSWER && question != null && !question.trim().isEmpty()) {
+        if (type == Post.PostType.ANSWER && questionText != null) {
             message.append("> *Вопрос:*\n");
-            String cleanQuestion = htmlDecoder.cleanHtml(question);
-            if (cleanQuestion != null && !cleanQuestion.isEmpty()) {
-                if (cleanQuestion.length() > 400) {
-                    cleanQuestion = cleanQuestion.substring(0, 397) + "...";
-                }
-                message.append(escapeMarkdown(cleanQuestion.trim()));
-            }
+            message.append(escapeMarkdown(truncate(questionText, MAX_ANSWER_LENGTH)));
             message.append("\n\n");
 
-            if (answer != null && !answer.trim().isEmpty()) {
+            if (answerText != null) {
                 message.append("> *Ответ:*\n");
-                String cleanAnswer = htmlDecoder.cleanHtml(answer);
-                if (cleanAnswer != null && !cleanAnswer.isEmpty()) {
-                    if (cleanAnswer.length() > 400) {
-                        cleanAnswer = cleanAnswer.substring(0, 397) + "...";
-                    }
-                    message.append(escapeMarkdown(cleanAnswer.trim()));
-                }
+                message.append(escapeMarkdown(truncate(answerText, MAX_ANSWER_LENGTH)));
                 message.append("\n\n");
             }
             // Ссылка на пост
@@ -62,13 +131,8 @@ public class TumblrPostDTO {
         }
 
         // обычная обработка
-        String description = getCleanText();
-        if (description != null && !description.trim().isEmpty()) {
-            // Ограничиваем длину описания
-            if (description.length() > 500) {
-                description = description.substring(0, 497) + "...";
-            }
-            message.append(escapeMarkdown(description.trim()));
+        if (text != null) {
+            message.append(escapeMarkdown(truncate(text, MAX_TEXT_LENGTH)));
             message.append("\n");
         }
 
@@ -80,21 +144,48 @@ public class TumblrPostDTO {
         return message.toString();
     }
 
-    public String getCleanText() {
+    // Записи очереди доставки до перехода на компактный вид хранили сырой HTML
+    @JsonProperty("summary")
+    private void setLegacySummary(String summary) {
+        String cleanSummary = clean(summary, MAX_TEXT_LENGTH);
+        if (cleanSummary != null) {
+            this.text = cleanSummary;
+        }
+    }
 
-        String text = null;
+    @JsonProperty("body")
+    private void setLegacyBody(String body) {
+        if (this.text == null) {
+            this.text = clean(body, MAX_TEXT_LENGTH);
+        }
+        this.mediaHtml = contentExtractor.extractMediaTags(body);
+    }
 
-        if (summary != null && !summary.trim().isEmpty()) {
-            text = summary;
-        } else if (body != null && !body.trim().isEmpty()) {
-            text = body;
+    @JsonProperty("question")
+    private void setLegacyQuestion(String question) {
+        this.questionText = clean(question, MAX_ANSWER_LENGTH);
+    }
+
+    @JsonProperty("answer")
+    private void setLegacyAnswer(String answer) {
+        this.answerText = clean(answer, MAX_ANSWER_LENGTH);
+    }
+
+    // Очищенный от HTML текст, не длиннее limit + 1 символ; null, если текста нет
+    private static String clean(String html, int limit) {
+        if (html == null || html.isBlank()) {
+            return null;
         }
-        
-        if (text == null) {
+        String clean = htmlDecoder.cleanHtml(html);
+        if (clean == null || clean.isBlank()) {
             return null;
         }
+        clean = clean.trim();
+        return clean.length() > limit + 1 ? clean.substring(0, limit + 1) : clean;
+    }
 
-        return htmlDecoder.cleanHtml(text);
+    private static String truncate(String text, int limit) {
+        return text.length() > limit ? text.substring(0, limit - 3) + "..." : text;
     }
 
     private String escapeMarkdown(String text) {
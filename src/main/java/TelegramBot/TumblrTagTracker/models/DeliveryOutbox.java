@@ -0,0 +1,88 @@
+package TelegramBot.TumblrTagTracker.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Очередь доставки постов пользователям. Переживает рестарты:
+// после деплоя воркеры продолжают с того места, где остановились.
+@Entity
+@Table(name = "delivery_outbox", indexes = {
+        @Index(name = "idx_outbox_user_post", columnList = "user_id,post_id", unique = true),
+        @Index(name = "idx_outbox_status_due", columnList = "status,due_at"),
+        @Index(name = "idx_outbox_user_status", columnList = "user_id,status")})
+@Getter
+@Setter
+public class DeliveryOutbox {
+
+    public enum Status {
+        PENDING,
+        IN_PROGRESS,
+        SENT,
+        FAILED
+    }
+
+    // Как и у UserPostDelivery - блоки id из таблицы-генератора, чтобы постановка в очередь шла пачками
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "delivery_outbox_id")
+    @TableGenerator(name = "delivery_outbox_id", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "delivery_outbox", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "post_id", nullable = false, length = 100)
+    private String postId;
+
+    // Пост целиком в JSON, чтобы не ходить повторно в Tumblr после рестарта
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    @Column(name = "due_at", nullable = false)
+    private LocalDateTime dueAt;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    // Пост пойдёт в составе дайджеста вместе с другими постами пользователя
+    @Column(name = "digest", nullable = false)
+    private Boolean digest;
+
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    public DeliveryOutbox() {
+        this.createdAt = LocalDateTime.now();
+        this.status = Status.PENDING;
+        this.attempts = 0;
+        this.digest = false;
+    }
+
+    public DeliveryOutbox(Long userId, String postId, String payload, LocalDateTime dueAt, boolean digest) {
+        this();
+        this.userId = userId;
+        this.postId = postId;
+        this.payload = payload;
+        this.dueAt = dueAt;
+        this.digest = digest;
+    }
+}
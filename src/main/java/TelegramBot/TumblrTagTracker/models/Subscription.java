@@ -3,6 +3,8 @@ package TelegramBot.TumblrTagTracker.models;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -14,6 +16,12 @@ import java.util.Set;
 @Table(name = "Subscription")
 public class Subscription {
 
+    // INSTANT - по одному посту с интервалом, DIGEST - пачками (альбомы до 10 медиа)
+    public enum DeliveryMode {
+        INSTANT,
+        DIGEST
+    }
+
     @Id
     @Column(name = "id")
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,6 +36,14 @@ public class Subscription {
     @Column(name = "is_active", nullable = false)
     private Boolean isActive;
 
+    // Время последнего изменения: по нему инстансы догоняют чужие правки подписок
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "delivery_mode", length = 20)
+    private DeliveryMode deliveryMode;
+
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(
             name = "subscription_tags",
@@ -36,15 +52,31 @@ public class Subscription {
     @Column(name = "tag")
     private Set<String> tags = new HashSet<>();
 
+    // Фильтры-выражения в канонической форме TagExpression, срабатывают в дополнение к тегам.
+    // Грузятся отдельным запросом сразу для всех подписок выборки: общий JOIN FETCH с тегами
+    // дал бы декартово произведение теги x фильтры.
+    @ElementCollection(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SUBSELECT)
+    @CollectionTable(
+            name = "subscription_filters",
+            joinColumns = @JoinColumn(name = "subscription_id")
+    )
+    @Column(name = "expression", length = 1000)
+    private Set<String> filters = new HashSet<>();
+
     public Subscription() {
         this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
         this.isActive = true;
     }
 
     public Subscription(Long chatID) {
+        this();
         this.chatID = chatID;
-        this.createdAt = LocalDateTime.now();
-        this.isActive = true;
+    }
+
+    public void touch() {
+        this.updatedAt = LocalDateTime.now();
     }
 
     public Boolean getActive() {
@@ -55,4 +87,8 @@ public class Subscription {
         isActive = active;
     }
 
+    public boolean isDigest() {
+        return deliveryMode == DeliveryMode.DIGEST;
+    }
+
 }
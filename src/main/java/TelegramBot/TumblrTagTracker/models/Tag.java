@@ -0,0 +1,29 @@
+package TelegramBot.TumblrTagTracker.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+// Словарь тегов: каждая строка тега хранится один раз, везде дальше - целочисленный id
+@Entity
+@Table(name = "tags", indexes = {
+        @Index(name = "idx_tags_name", columnList = "name", unique = true)})
+@Getter
+@Setter
+public class Tag {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // Бинарное сравнение: теги различаются так же, как строки в Java
+    @Column(name = "name", nullable = false, columnDefinition = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin")
+    private String name;
+
+    public Tag() {
+    }
+
+    public Tag(String name) {
+        this.name = name;
+    }
+}
@@ -1,16 +1,16 @@
 package TelegramBot.TumblrTagTracker.models;
 
-import jakarta.persistence.Column;
-import jakarta.persistence.Entity;
-import jakarta.persistence.Id;
-import jakarta.persistence.Table;
+import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
 
 @Entity
-@Table(name = "tracked_posts")
+@Table(name = "tracked_posts", indexes = {
+        @Index(name = "idx_tracked_fingerprint", columnList = "fingerprint")})
 @Getter
 @Setter
 public class TrackedPost {
@@ -19,6 +19,10 @@ public class TrackedPost {
     @Column(name = "post_id", length = 100)
     private String postId;
 
+    // Отпечаток содержимого: реблоги одного поста схлопываются в одну запись
+    @Column(name = "fingerprint", length = 80)
+    private String fingerprint;
+
     @Column(name = "blog_name", length = 2000)
     private String blogName;
 
@@ -43,9 +47,19 @@ public class TrackedPost {
     @Column(name = "sent_to_users_count")
     private Integer sentToUsersCount;
 
+    // Теги текстом - только у записей, сделанных до словаря тегов; новые записи хранят tagIds
     @Column(name = "tags", length = 2000, columnDefinition = "TEXT")
     private String tags;
 
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(
+            name = "tracked_post_tags",
+            joinColumns = @JoinColumn(name = "post_id"),
+            indexes = @Index(name = "idx_tracked_post_tags_tag", columnList = "tag_id")
+    )
+    @Column(name = "tag_id")
+    private Set<Integer> tagIds = new HashSet<>();
+
     public TrackedPost() {
         this.firstSeenAt = LocalDateTime.now();
         this.lastCheckedAt = LocalDateTime.now();
@@ -16,8 +16,13 @@ import java.util.Set;
 @Setter
 public class UserPostDelivery {
 
+    // IDENTITY выключает пакетную вставку в Hibernate: id берём из таблицы-генератора
+    // блоками по 50 (pooled), и saveAll при рассылке уходит пачками. Стартовое значение
+    // после перехода с auto-increment выставляет IdGeneratorSeeder
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_post_delivery_id")
+    @TableGenerator(name = "user_post_delivery_id", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "user_post_delivery", allocationSize = 50)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -0,0 +1,106 @@
+package TelegramBot.TumblrTagTracker.monitoring;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+// Запись JFR по запросу: POST /actuator/jfr запускает, DELETE /actuator/jfr останавливает
+// и сохраняет файл, GET показывает состояние. Одновременно идёт не больше одной записи;
+// если её забыли остановить, она сама завершится через monitoring.jfr.max-duration.
+@Component
+@Endpoint(id = "jfr")
+public class JfrRecordingEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(JfrRecordingEndpoint.class);
+
+    private final String settings;
+    private final Duration maxDuration;
+    private final Path directory;
+
+    private Recording recording;
+
+    public record RecordingStatus(boolean running, String name, String state, Instant startedAt, String file) {
+    }
+
+    @Autowired
+    public JfrRecordingEndpoint(@Value("${monitoring.jfr.settings:profile}") String settings,
+                                @Value("${monitoring.jfr.max-duration:10m}") Duration maxDuration,
+                                @Value("${monitoring.jfr.directory:${java.io.tmpdir}}") Path directory) {
+        this.settings = settings;
+        this.maxDuration = maxDuration;
+        this.directory = directory;
+    }
+
+    @ReadOperation
+    public synchronized RecordingStatus status() {
+        return describe();
+    }
+
+    @WriteOperation
+    public synchronized RecordingStatus start() throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return describe();
+        }
+        closeCurrent();
+
+        Files.createDirectories(directory);
+        Recording started = new Recording(Configuration.getConfiguration(settings));
+        started.setName("tumblr-" + Instant.now().getEpochSecond());
+        started.setToDisk(true);
+        started.setDuration(maxDuration);
+        // Файл пишется при остановке - вручную или по истечении maxDuration
+        started.setDestination(directory.resolve(started.getName() + ".jfr"));
+        started.start();
+        recording = started;
+
+        log.info("Запись JFR {} запущена (настройки {}, не дольше {})", started.getName(), settings, maxDuration);
+        return describe();
+    }
+
+    @DeleteOperation
+    public synchronized RecordingStatus stop() {
+        if (recording == null) {
+            return describe();
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        RecordingStatus status = describe();
+        log.info("Запись JFR {} остановлена, файл {}", recording.getName(), status.file());
+        closeCurrent();
+        return status;
+    }
+
+    private RecordingStatus describe() {
+        if (recording == null) {
+            return new RecordingStatus(false, null, null, null, null);
+        }
+        Path destination = recording.getDestination();
+        return new RecordingStatus(recording.getState() == RecordingState.RUNNING, recording.getName(),
+                recording.getState().name(), recording.getStartTime(),
+                destination != null ? destination.toString() : null);
+    }
+
+    private void closeCurrent() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
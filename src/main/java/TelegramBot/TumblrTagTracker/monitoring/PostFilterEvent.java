@@ -0,0 +1,26 @@
+package TelegramBot.TumblrTagTracker.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Проверка поста глобальными фильтрами; длительность - почти целиком чтение и запись tracked_posts
+@Name("tumblr.PostFilter")
+@Label("Post Filter")
+@Category({"Tumblr Tag Tracker", "Filter"})
+@Description("Глобальные фильтры поста вместе с обращением к БД")
+@StackTrace(false)
+public class PostFilterEvent extends Event {
+
+    @Label("Post Id")
+    public long postId;
+
+    @Label("Note Count")
+    public int noteCount;
+
+    @Label("Passed")
+    public boolean passed;
+}
@@ -0,0 +1,26 @@
+package TelegramBot.TumblrTagTracker.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Обращение к Redis из RedisCacheService
+@Name("tumblr.RedisCall")
+@Label("Redis Call")
+@Category({"Tumblr Tag Tracker", "Redis"})
+@Description("Проверка или отметка доставки поста в Redis")
+@StackTrace(false)
+public class RedisCallEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Result")
+    public boolean result;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,26 @@
+package TelegramBot.TumblrTagTracker.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Один реальный запрос к Tumblr API по тегу (попадания в кэш запросов сюда не попадают)
+@Name("tumblr.TagFetch")
+@Label("Tumblr Tag Fetch")
+@Category({"Tumblr Tag Tracker", "Poll"})
+@Description("Запрос постов по тегу к Tumblr API")
+@StackTrace(false)
+public class TagFetchEvent extends Event {
+
+    @Label("Tag")
+    public String tag;
+
+    @Label("Posts")
+    public int posts;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,28 @@
+package TelegramBot.TumblrTagTracker.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Одна попытка отправить пост пользователю (повторы Retry - отдельные события)
+@Name("tumblr.TelegramSend")
+@Label("Telegram Send")
+@Category({"Tumblr Tag Tracker", "Delivery"})
+@Description("Отправка поста в Telegram")
+@StackTrace(false)
+public class TelegramSendEvent extends Event {
+
+    @Label("Chat Id")
+    public long chatId;
+
+    // photo, video или text
+    @Label("Method")
+    public String method;
+
+    // sent, fallback (ушёл простым текстом) или failed
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,78 @@
+package TelegramBot.TumblrTagTracker.repositories;
+
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DeliveryOutboxRepository extends JpaRepository<DeliveryOutbox, Long> {
+
+    interface QueuedCount {
+        Long getUserId();
+
+        Long getQueued();
+    }
+
+    // Глубина очереди по пользователям; читается один раз при старте, дальше считается в памяти
+    @Query("SELECT o.userId AS userId, COUNT(o) AS queued FROM DeliveryOutbox o " +
+            "WHERE o.status IN :statuses GROUP BY o.userId")
+    List<QueuedCount> countQueuedByUser(@Param("statuses") Collection<DeliveryOutbox.Status> statuses);
+
+    @Query("SELECT o.postId FROM DeliveryOutbox o WHERE o.userId = :userId AND o.postId IN :postIds")
+    List<String> findQueuedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<String> postIds);
+
+    // Время последней запланированной отправки пользователю - следующая пойдёт после неё
+    @Query("SELECT MAX(o.dueAt) FROM DeliveryOutbox o WHERE o.userId = :userId AND o.status IN :statuses")
+    LocalDateTime findLatestDueAt(@Param("userId") Long userId,
+                                  @Param("statuses") Collection<DeliveryOutbox.Status> statuses);
+
+    // Кандидаты на отправку по кругу между пользователями: у каждого не больше perUser самых старых записей,
+    // первыми идут пользователи с самой давней записью. Пользователи, у которых что-то уже отправляется,
+    // пропускаются - в работе не больше одной единицы на пользователя, сколько бы постов у него ни копилось.
+    @Query(value = "SELECT ranked.id FROM (" +
+            "  SELECT o.id, o.user_id," +
+            "         ROW_NUMBER() OVER (PARTITION BY o.user_id ORDER BY o.due_at, o.id) AS user_rank," +
+            "         MIN(o.due_at) OVER (PARTITION BY o.user_id) AS user_oldest" +
+            "  FROM delivery_outbox o" +
+            "  WHERE o.status = 'PENDING' AND o.due_at <= :now" +
+            "    AND NOT EXISTS (SELECT 1 FROM delivery_outbox p WHERE p.user_id = o.user_id AND p.status = 'IN_PROGRESS')" +
+            ") ranked WHERE ranked.user_rank <= :perUser " +
+            "ORDER BY ranked.user_oldest, ranked.user_id, ranked.user_rank LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findFairCandidateIds(@Param("now") LocalDateTime now, @Param("perUser") int perUser,
+                                    @Param("limit") int limit);
+
+    // SKIP LOCKED: несколько инстансов разбирают очередь, не блокируя друг друга
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM DeliveryOutbox o WHERE o.id IN :ids AND o.status = :status")
+    List<DeliveryOutbox> findByIdsForUpdate(@Param("ids") Collection<Long> ids,
+                                            @Param("status") DeliveryOutbox.Status status);
+
+    // Возвращаем в очередь записи, чей владелец упал, не успев их отправить
+    @Modifying
+    @Query("UPDATE DeliveryOutbox o SET o.status = :pending, o.claimedBy = null, o.leaseUntil = null " +
+            "WHERE o.status = :inProgress AND o.leaseUntil < :now")
+    int releaseExpiredLeases(@Param("pending") DeliveryOutbox.Status pending,
+                             @Param("inProgress") DeliveryOutbox.Status inProgress,
+                             @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE DeliveryOutbox o SET o.status = :pending, o.claimedBy = null, o.leaseUntil = null " +
+            "WHERE o.id IN :ids AND o.status = :inProgress")
+    int releaseByIds(@Param("ids") Collection<Long> ids,
+                     @Param("pending") DeliveryOutbox.Status pending,
+                     @Param("inProgress") DeliveryOutbox.Status inProgress);
+
+    @Modifying
+    @Query("DELETE FROM DeliveryOutbox o WHERE o.status IN :statuses AND o.createdAt < :olderThan")
+    int deleteFinishedBefore(@Param("statuses") Collection<DeliveryOutbox.Status> statuses,
+                             @Param("olderThan") LocalDateTime olderThan);
+}
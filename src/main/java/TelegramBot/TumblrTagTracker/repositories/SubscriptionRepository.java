@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,11 +17,17 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Stri
 
     Optional<Subscription> findByChatID(Long chatID);
 
-    @Modifying
-    @Query("UPDATE Subscription s SET s.isActive = false WHERE s.chatID = :chatID")
-    void deactivateByChatID(@Param("chatID") Long chatID);
+    // Сбрасываем контекст: иначе после коммита findByChatID вернёт уже загруженную
+    // в этой транзакции подписку с isActive = true, и снимок её не отпишет
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Subscription s SET s.isActive = false, s.updatedAt = :now WHERE s.chatID = :chatID")
+    void deactivateByChatID(@Param("chatID") Long chatID, @Param("now") LocalDateTime now);
 
-    // Исправление проблемы N + 1
-    @Query("SELECT s FROM Subscription s LEFT JOIN FETCH s.tags WHERE s.isActive = true")
+    // Исправление проблемы N + 1: теги в том же запросе, фильтры одним подзапросом (FetchMode.SUBSELECT)
+    @Query("SELECT DISTINCT s FROM Subscription s LEFT JOIN FETCH s.tags WHERE s.isActive = true")
     List<Subscription> findByIsActiveTrueWithTags();
+
+    // Подписки, изменённые после отметки, включая отписавшихся
+    @Query("SELECT DISTINCT s FROM Subscription s LEFT JOIN FETCH s.tags WHERE s.updatedAt > :since")
+    List<Subscription> findChangedSince(@Param("since") LocalDateTime since);
 }
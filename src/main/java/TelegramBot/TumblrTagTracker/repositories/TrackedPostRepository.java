@@ -14,12 +14,14 @@ import java.util.Optional;
 public interface TrackedPostRepository extends JpaRepository<TrackedPost, String> {
     Optional<TrackedPost> findByPostId(String postId);
 
+    Optional<TrackedPost> findFirstByFingerprint(String fingerprint);
+
     // Находит посты, которые еще не были отправлены и набрали минимум заметок
-    @Query("SELECT tp FROM TrackedPost tp WHERE tp.wasSent = false AND tp.noteCount >= :minNotes")
+    @Query("SELECT DISTINCT tp FROM TrackedPost tp LEFT JOIN FETCH tp.tagIds WHERE tp.wasSent = false AND tp.noteCount >= :minNotes")
     List<TrackedPost> findUnsentPostsWithMinimumNotes(@Param("minNotes") Integer minNotes);
 
     // Находит посты для повторной проверки, которые не были отправлены, когда последняя проверка была давно
-    @Query("SELECT tp FROM TrackedPost tp WHERE tp.wasSent = false AND tp.lastCheckedAt < :checkBefore ORDER BY tp.lastCheckedAt ASC")
+    @Query("SELECT DISTINCT tp FROM TrackedPost tp LEFT JOIN FETCH tp.tagIds WHERE tp.wasSent = false AND tp.lastCheckedAt < :checkBefore ORDER BY tp.lastCheckedAt ASC")
     List<TrackedPost> findPostsForRecheck(@Param("checkBefore") LocalDateTime checkBefore);
 
     // Находит старые отправленные посты для очистки
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +16,19 @@ public interface UserPostDeliveryRepository extends JpaRepository<UserPostDelive
 
     Optional<UserPostDelivery> findByUserIdAndPostId(Long userId, String postId);
 
+    interface DeliveryState {
+        String getPostId();
+
+        Long getUserId();
+
+        Boolean getWasSent();
+    }
+
+    // Все известные доставки по пачке постов одним запросом - для рассылки через битмапы
+    @Query("SELECT upd.postId AS postId, upd.userId AS userId, upd.wasSent AS wasSent " +
+            "FROM UserPostDelivery upd WHERE upd.postId IN :postIds")
+    List<DeliveryState> findStatesByPostIds(@Param("postIds") Collection<String> postIds);
+
     @Query("SELECT upd FROM UserPostDelivery upd WHERE upd.wasSent = true AND upd.sentAt < :olderThan")
     List<UserPostDelivery> findOldSentDeliveries(@Param("olderThan") LocalDateTime olderThan);
 }
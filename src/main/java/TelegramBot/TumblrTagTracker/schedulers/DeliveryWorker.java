@@ -0,0 +1,261 @@
+package TelegramBot.TumblrTagTracker.schedulers;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import TelegramBot.TumblrTagTracker.services.DeliveryOutboxService;
+import TelegramBot.TumblrTagTracker.services.NotificationService;
+import TelegramBot.TumblrTagTracker.services.PostTrackingService;
+import TelegramBot.TumblrTagTracker.services.UserPostTrackingService;
+import TelegramBot.TumblrTagTracker.util.CycleLog;
+import TelegramBot.TumblrTagTracker.util.LatencyHistogram;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Разбирает очередь доставки: забирает записи, у которых подошло время,
+// и отправляет их в пуле userExecutor. Забирается не больше, чем есть свободных потоков:
+// единица работы - одна запись или один дайджест пользователя, остальное ждёт в БД.
+@Component
+public class DeliveryWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryWorker.class);
+
+    private final DeliveryOutboxService outboxService;
+    private final NotificationService notificationService;
+    private final UserPostTrackingService userPostTrackingService;
+    private final PostTrackingService postTrackingService;
+    private final ThreadPoolExecutor userExecutor;
+    private final JobRunner jobRunner;
+
+    // Записи, которые забраны из очереди, но ещё не начали отправляться
+    private final Set<Long> claimedNotStarted = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopping = false;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deferredPolls = new AtomicLong();
+
+    // Время от постановки в очередь до доставки - по его хвосту (p99) видно, честно ли делится пул
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    public record AdmissionStats(long admitted, long rejected, long deferredPolls, int activeThreads, int queued) {
+    }
+
+    @Value("${notification.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Autowired
+    public DeliveryWorker(DeliveryOutboxService outboxService, NotificationService notificationService,
+                          UserPostTrackingService userPostTrackingService, PostTrackingService postTrackingService,
+                          ThreadPoolExecutor userExecutor, JobRunner jobRunner) {
+        this.outboxService = outboxService;
+        this.notificationService = notificationService;
+        this.userPostTrackingService = userPostTrackingService;
+        this.postTrackingService = postTrackingService;
+        this.userExecutor = userExecutor;
+        this.jobRunner = jobRunner;
+    }
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll.ms:5000}", scheduler = "pollingScheduler")
+    public void drainOutbox() {
+        jobRunner.run("drain-outbox", this::drainOnce);
+    }
+
+    // Сверка глубины очереди с БД: счётчик инстанса не видит отправок других инстансов
+    @Scheduled(fixedDelayString = "${notification.outbox.reconcile.ms:60000}", scheduler = "maintenanceScheduler")
+    public void reconcileQueueDepths() {
+        jobRunner.run("reconcile-outbox-depths", outboxService::reconcileQueueDepths);
+    }
+
+    private void drainOnce() {
+        if (stopping) {
+            return;
+        }
+
+        try {
+            int capacity = freeCapacity();
+            if (capacity == 0) {
+                // Пул занят: записи остаются в очереди и будут забраны в следующем опросе
+                deferredPolls.incrementAndGet();
+                log.debug("Пул отправки занят, разбор очереди отложен");
+                return;
+            }
+
+            List<DeliveryOutbox> claimed = outboxService.claimDue(Math.min(batchSize, capacity));
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            CycleLog.count("outbox.claimed", claimed.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Задержка доставки p50 {} / p99 {}",
+                        deliveryLatency.percentile(0.5), deliveryLatency.percentile(0.99));
+            }
+
+            // Записи дайджеста одного пользователя отправляются одной задачей
+            Map<Long, List<DeliveryOutbox>> perUser = claimed.stream()
+                    .collect(Collectors.groupingBy(DeliveryOutbox::getUserId, LinkedHashMap::new, Collectors.toList()));
+
+            for (List<DeliveryOutbox> rows : perUser.values()) {
+                List<Long> ids = rows.stream().map(DeliveryOutbox::getId).toList();
+                claimedNotStarted.addAll(ids);
+                try {
+                    userExecutor.execute(() -> deliverAll(rows));
+                    admitted.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    ids.forEach(claimedNotStarted::remove);
+                    outboxService.release(ids);
+                    rejected.incrementAndGet();
+                    CycleLog.count("outbox.returned", ids.size());
+                }
+            }
+
+        } catch (Exception e) {
+            log.error("Ошибка при разборе очереди доставки", e);
+        }
+    }
+
+    public AdmissionStats admissionStats() {
+        return new AdmissionStats(admitted.get(), rejected.get(), deferredPolls.get(),
+                userExecutor.getActiveCount(), userExecutor.getQueue().size());
+    }
+
+    public LatencyHistogram deliveryLatency() {
+        return deliveryLatency;
+    }
+
+    private void recordLatency(DeliveryOutbox row) {
+        if (row.getCreatedAt() != null) {
+            deliveryLatency.record(Duration.between(row.getCreatedAt(), LocalDateTime.now()));
+        }
+    }
+
+    // Сколько задач пул начнёт выполнять сразу: свободные потоки минус то, что уже ждёт в очереди.
+    // Место в очереди пула не считаем: задача, простоявшая там дольше аренды, может быть
+    // забрана и отправлена другим инстансом повторно.
+    private int freeCapacity() {
+        int idleThreads = userExecutor.getMaximumPoolSize() - userExecutor.getActiveCount();
+        return Math.max(0, idleThreads - userExecutor.getQueue().size());
+    }
+
+    private void deliverAll(List<DeliveryOutbox> rows) {
+        List<DeliveryOutbox> started = rows.stream()
+                .filter(row -> claimedNotStarted.remove(row.getId())) // остальные уже возвращены в очередь при остановке
+                .toList();
+
+        if (started.size() == 1 && !Boolean.TRUE.equals(started.get(0).getDigest())) {
+            deliver(started.get(0));
+        } else if (!started.isEmpty()) {
+            deliverDigest(started);
+        }
+    }
+
+    private void deliverDigest(List<DeliveryOutbox> rows) {
+        Long userId = rows.get(0).getUserId();
+        Map<String, DeliveryOutbox> pending = new LinkedHashMap<>();
+
+        try {
+            for (DeliveryOutbox row : rows) {
+                if (userPostTrackingService.wasDelivered(userId, row.getPostId())) {
+                    outboxService.markSent(row.getId());
+                } else {
+                    pending.put(row.getPostId(), row);
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<TumblrPostDTO> posts = pending.values().stream().map(outboxService::readPost).toList();
+            Set<Long> delivered = notificationService.sendDigestToUser(userId, posts);
+
+            for (DeliveryOutbox row : pending.values()) {
+                if (delivered.contains(Long.valueOf(row.getPostId()))) {
+                    userPostTrackingService.markAsSent(userId, row.getPostId());
+                    postTrackingService.markPostAsSent(row.getPostId());
+                    outboxService.markSent(row.getId());
+                    recordLatency(row);
+                } else {
+                    outboxService.markFailed(row.getId(), "Пост не вошёл в отправленный дайджест");
+                }
+            }
+
+            log.info("Дайджест пользователю {}: {} из {} постов", userId, delivered.size(), pending.size());
+
+        } catch (Exception e) {
+            log.error("Ошибка при отправке дайджеста пользователю {}", userId, e);
+            pending.values().forEach(row -> outboxService.markFailed(row.getId(), e.getMessage()));
+        }
+    }
+
+    private void deliver(DeliveryOutbox row) {
+        Long userId = row.getUserId();
+        String postId = row.getPostId();
+
+        try {
+            // Пост мог уйти до падения инстанса, но не успеть отметиться в очереди
+            if (userPostTrackingService.wasDelivered(userId, postId)) {
+                outboxService.markSent(row.getId());
+                return;
+            }
+
+            TumblrPostDTO post = outboxService.readPost(row);
+            boolean sent = notificationService.sendPostToUser(userId, post);
+
+            if (sent) {
+                userPostTrackingService.markAsSent(userId, postId);
+                postTrackingService.markPostAsSent(postId);
+                outboxService.markSent(row.getId());
+                recordLatency(row);
+            } else {
+                outboxService.markFailed(row.getId(), "Telegram не принял сообщение");
+            }
+
+        } catch (Exception e) {
+            log.error("Ошибка при отправке поста {} пользователю {}", postId, userId, e);
+            outboxService.markFailed(row.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down user executor...");
+        stopping = true;
+        userExecutor.shutdown();
+        try {
+            if (!userExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                userExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            userExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // Что не успели начать - отдаём обратно, следующий инстанс подхватит сразу, не дожидаясь аренды
+        List<Long> notStarted = new ArrayList<>(claimedNotStarted);
+        claimedNotStarted.clear();
+        try {
+            outboxService.release(notStarted);
+        } catch (Exception e) {
+            log.warn("Не удалось вернуть {} записей в очередь, они вернутся по истечении аренды", notStarted.size(), e);
+        }
+    }
+}
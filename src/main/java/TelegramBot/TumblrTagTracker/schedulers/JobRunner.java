@@ -0,0 +1,105 @@
+package TelegramBot.TumblrTagTracker.schedulers;
+
+import TelegramBot.TumblrTagTracker.util.CycleLog;
+import TelegramBot.TumblrTagTracker.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Обёртка для задач по расписанию: случайная задержка перед стартом (jitter),
+// пропуск запуска, если предыдущий ещё идёт, и гистограмма длительности.
+// Jitter задачи задаётся свойством scheduling.jobs.<имя>.jitter, по умолчанию его нет.
+// Каждый запуск - отдельный цикл CycleLog: cycleId в MDC и одна строка итогов в конце.
+@Component
+public class JobRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(JobRunner.class);
+
+    private final Environment environment;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public record JobStats(long runs, long skipped, boolean running, Duration p50, Duration p99,
+                           Duration lastDuration, Instant lastFinishedAt) {
+    }
+
+    private static class Job {
+        final AtomicBoolean running = new AtomicBoolean();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final LatencyHistogram durations = new LatencyHistogram();
+        volatile Duration lastDuration = Duration.ZERO;
+        volatile Instant lastFinishedAt;
+        final Duration jitter;
+
+        Job(Duration jitter) {
+            this.jitter = jitter;
+        }
+    }
+
+    @Autowired
+    public JobRunner(Environment environment) {
+        this.environment = environment;
+    }
+
+    public void run(String name, Runnable task) {
+        Job job = jobs.computeIfAbsent(name, k -> new Job(
+                environment.getProperty("scheduling.jobs." + k + ".jitter", Duration.class, Duration.ZERO)));
+
+        if (!job.running.compareAndSet(false, true)) {
+            job.skipped.incrementAndGet();
+            log.warn("Задача {} ещё выполняется, запуск пропущен", name);
+            return;
+        }
+
+        try {
+            if (!job.jitter.isZero() && !sleepJitter(job.jitter)) {
+                return;
+            }
+
+            CycleLog cycle = CycleLog.start(name);
+            long startedAt = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                Duration duration = Duration.ofNanos(System.nanoTime() - startedAt);
+                job.runs.incrementAndGet();
+                job.durations.record(duration);
+                job.lastDuration = duration;
+                job.lastFinishedAt = Instant.now();
+                cycle.finish(log, duration);
+            }
+        } finally {
+            job.running.set(false);
+        }
+    }
+
+    public Map<String, JobStats> stats() {
+        Map<String, JobStats> stats = new TreeMap<>();
+        jobs.forEach((name, job) -> stats.put(name, new JobStats(job.runs.get(), job.skipped.get(),
+                job.running.get(), job.durations.percentile(0.5), job.durations.percentile(0.99),
+                job.lastDuration, job.lastFinishedAt)));
+        return stats;
+    }
+
+    // Разносит старт одинаковых задач разных инстансов; false - поток прерван (остановка)
+    private static boolean sleepJitter(Duration maxJitter) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxJitter.toMillis() + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,86 +1,73 @@
 package TelegramBot.TumblrTagTracker.schedulers;
 
 import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
-import TelegramBot.TumblrTagTracker.models.Subscription;
 import TelegramBot.TumblrTagTracker.models.TrackedPost;
 import TelegramBot.TumblrTagTracker.services.*;
-import jakarta.annotation.PreDestroy;
+import TelegramBot.TumblrTagTracker.util.CycleLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Component
-@EnableScheduling
 public class TumblrCheckSchedule {
 
     private static final Logger log = LoggerFactory.getLogger(TumblrCheckSchedule.class);
 
-    private final Duration delayBetweenPosts = Duration.ofMinutes(1);
-
-    private final SubscriptionService subscriptionService;
+    private final SubscriptionSnapshot subscriptionSnapshot;
     private final TumblrService tumblrService;
-    private final NotificationService notificationService;
     private final PostTrackingService postTrackingService;
     private final UserPostTrackingService userPostTrackingService;
-
-    // Пул потоков для параллельной отправки (по одному потоку на пользователя)
-    private final ExecutorService userExecutor;
+    private final TumblrClientPool tumblrClientPool;
+    private final TagHealthTracker tagHealthTracker;
+    private final DeliveryOutboxService deliveryOutboxService;
+    private final TagDictionary tagDictionary;
+    private final PostPipeline postPipeline;
+    private final JobRunner jobRunner;
 
     @Autowired
-    public TumblrCheckSchedule(SubscriptionService subscriptionService, TumblrService tumblrService,
-                               NotificationService notificationService, PostTrackingService postTrackingService,
-                               UserPostTrackingService userPostTrackingService, ExecutorService userExecutor) {
-        this.subscriptionService = subscriptionService;
+    public TumblrCheckSchedule(SubscriptionSnapshot subscriptionSnapshot, TumblrService tumblrService,
+                               PostTrackingService postTrackingService,
+                               UserPostTrackingService userPostTrackingService, TumblrClientPool tumblrClientPool,
+                               TagHealthTracker tagHealthTracker, DeliveryOutboxService deliveryOutboxService,
+                               TagDictionary tagDictionary, PostPipeline postPipeline, JobRunner jobRunner) {
+        this.subscriptionSnapshot = subscriptionSnapshot;
         this.tumblrService = tumblrService;
-        this.notificationService = notificationService;
         this.postTrackingService = postTrackingService;
         this.userPostTrackingService = userPostTrackingService;
-        this.userExecutor = userExecutor;
+        this.tumblrClientPool = tumblrClientPool;
+        this.tagHealthTracker = tagHealthTracker;
+        this.deliveryOutboxService = deliveryOutboxService;
+        this.tagDictionary = tagDictionary;
+        this.postPipeline = postPipeline;
+        this.jobRunner = jobRunner;
     }
 
-    @PreDestroy
-    public void shutdown() {
-        log.info("Shutting down user executor...");
-        userExecutor.shutdown();
-        try {
-            if (!userExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
-                userExecutor.shutdownNow();
-                if (!userExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    log.error("User executor did not terminate");
-                }
-            }
-        } catch (InterruptedException e) {
-            userExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+    @Scheduled(fixedDelay = 300000, scheduler = "checkScheduler") // 5 минут
+    public void checkForNewPosts() {
+        jobRunner.run("check-new-posts", this::doCheckForNewPosts);
     }
 
-    @Scheduled(fixedDelay = 300000) // 5 минут
-    public void checkForNewPosts() {
+    private void doCheckForNewPosts() {
         try {
-            List<Subscription> activeSubscriptions = subscriptionService.getAllActiveSubscriptions();
+            // Снимок подписок живёт в памяти и обновляется по изменениям, а не перечитывается каждый цикл
+            SubscriberIndex subscriberIndex = subscriptionSnapshot.subscriberIndex();
 
-            if (activeSubscriptions.isEmpty()) {
+            if (subscriberIndex.size() == 0) {
                 log.info("Нет активных подписчиков");
                 return;
             }
 
-            log.info("Найдено {} активных подписчиков", activeSubscriptions.size());
+            CycleLog.count("subscribers", subscriberIndex.size());
 
-            // Собираем все уникальные теги от всех пользователей
-            Set<String> allTags = activeSubscriptions.stream()
-                    .map(Subscription::getTags)
-                    .filter(tags -> tags != null && !tags.isEmpty())
-                    .flatMap(Set::stream)
+            // Собираем все уникальные теги от всех пользователей, включая ключевые теги фильтров
+            Set<String> allTags = subscriberIndex.trackedTagIds().stream()
+                    .map(tagDictionary::nameOf)
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toSet());
 
             if (allTags.isEmpty()) {
@@ -88,54 +75,29 @@ public class TumblrCheckSchedule {
                 return;
             }
 
-            log.info("Собрано {} уникальных тегов для проверки", allTags.size());
-
-            // Получаем новые посты по всем тегам
-            List<TumblrPostDTO> newPosts = tumblrService.getNewPostsByTags(allTags);
-
-            if (newPosts.isEmpty()) {
-                log.info("Новых постов не найдено");
-                return;
-            }
-
-            log.info("Найдено {} новых постов", newPosts.size());
-
-            // Для каждого поста определяем, кому его отправить
-            Map<Long, List<TumblrPostDTO>> postsPerUser = new HashMap<>();
+            tagHealthTracker.retainOnly(allTags);
 
-            for (TumblrPostDTO post : newPosts) {
+            CycleLog.count("tags.total", allTags.size());
+            CycleLog.count("api.permits", tumblrClientPool.getLastSeenPermits());
 
-                for (Subscription subscription : activeSubscriptions) {
-                    Long userId = subscription.getChatID();
-                    Set<String> userTags = subscription.getTags();
-
-                    if (userPostTrackingService.shouldSendToUser(userId, post, userTags)) {
-                        postsPerUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(post);
-                        log.debug("Пост {} добавлен для пользователя {}", post.getId(), userId);
-                    }
-                }
-            }
-
-            if (postsPerUser.isEmpty()) {
-                log.info("Нет постов для отправки пользователям (не прошли фильтры или уже отправлены)");
-                return;
-            }
-
-            log.info("=== ИТОГО: {} постов для отправки {} пользователям ===", postsPerUser.size(), activeSubscriptions.size());
-
-            for (Map.Entry<Long, List<TumblrPostDTO>> entry : postsPerUser.entrySet()) {
-                log.info("Пользователь {}: {} постов", entry.getKey(), entry.getValue().size());
-            }
-
-            sendPostsToUsersAsync(postsPerUser);
+            // Посты каждого тега проходят фильтры и рассылку сразу после запроса,
+            // не дожидаясь остальных тегов
+            // Итоги (посты от API, прошедшие фильтры, поставленные в очередь) пишет CycleLog в конце цикла
+            PostPipeline.PipelineResult result = postPipeline.run(allTags, subscriberIndex,
+                    this::enqueueForDelivery);
+            CycleLog.count("recipients", result.recipients());
 
         } catch (Exception e) {
             log.error("Ошибка при проверке новых постов", e);
         }
     }
 
-    @Scheduled(fixedDelay = 1800000) // 30 минут
+    @Scheduled(fixedDelay = 1800000, scheduler = "maintenanceScheduler") // 30 минут
     public void checkDelayedPosts() {
+        jobRunner.run("check-delayed-posts", this::doCheckDelayedPosts);
+    }
+
+    private void doCheckDelayedPosts() {
         try {
             log.info("Проверка отложенных постов");
 
@@ -148,47 +110,33 @@ public class TumblrCheckSchedule {
 
             log.info("Найдено {} постов, готовых к отправке", readyPosts.size());
 
-            List<Subscription> activeSubscriptions = subscriptionService.getAllActiveSubscriptions();
+            SubscriberIndex subscriberIndex = subscriptionSnapshot.subscriberIndex();
 
-            if (activeSubscriptions.isEmpty()) {
+            if (subscriberIndex.size() == 0) {
                 log.info("Нет активных подписчиков для отложенных постов");
                 return;
             }
 
-            Map<Long, List<TumblrPostDTO>> postsPerUser = new HashMap<>();
+            List<TumblrPostDTO> delayedPosts = new ArrayList<>();
 
             for (TrackedPost trackedPost : readyPosts) {
-                Set<String> postTags = trackedPost.getTags() != null
-                        ? Arrays.stream(trackedPost.getTags().split(","))
-                        .map(String::trim)
-                        .filter(tag -> !tag.isEmpty())
-                        .collect(Collectors.toSet()) : Collections.emptySet();
+                int[] postTagIds = postTrackingService.getTagIds(trackedPost);
 
-                if (postTags.isEmpty()) {
+                if (postTagIds.length == 0) {
                     log.warn("Пост {} не имеет тегов, пропускаем", trackedPost.getPostId());
                     continue;
                 }
 
-                for (Subscription subscription : activeSubscriptions) {
-                    Long userId = subscription.getChatID();
-                    Set<String> userTags = subscriptionService.getTags(userId);
-
-                    if (userTags == null || userTags.isEmpty()) {
-                        continue;
-                    }
-
-                    TumblrPostDTO postDTO = createDTOFromTrackedPost(trackedPost);
-
-                    if (userPostTrackingService.shouldSendToUser(userId, postDTO, userTags)) {
-                        postsPerUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(postDTO);
-                    }
-                }
+                delayedPosts.add(createDTOFromTrackedPost(trackedPost, postTagIds));
             }
 
+            Map<Long, List<TumblrPostDTO>> postsPerUser =
+                    userPostTrackingService.selectRecipients(delayedPosts, subscriberIndex);
+
             if (!postsPerUser.isEmpty()) {
                 int totalPosts = postsPerUser.values().stream().mapToInt(List::size).sum();
                 log.info("Отправляем {} отложенных постов {} пользователям", totalPosts, postsPerUser.size());
-                sendPostsToUsersAsync(postsPerUser);
+                enqueueForDelivery(postsPerUser);
             } else {
                 log.info("Нет пользователей для отправки отложенных постов");
             }
@@ -201,8 +149,12 @@ public class TumblrCheckSchedule {
     /**
      * Повторная проверка метрик отложенных постов каждый час
      */
-    @Scheduled(fixedDelay = 3600000) // 1 час
+    @Scheduled(fixedDelay = 3600000, scheduler = "maintenanceScheduler") // 1 час
     public void recheckPostMetrics() {
+        jobRunner.run("recheck-post-metrics", this::doRecheckPostMetrics);
+    }
+
+    private void doRecheckPostMetrics() {
         try {
             log.info("Повторная проверка метрик отложенных постов");
 
@@ -216,11 +168,10 @@ public class TumblrCheckSchedule {
             log.info("Найдено {} постов для повторной проверки", postsToRecheck.size());
 
             Set<String> tagsToCheck = postsToRecheck.stream()
-                    .map(TrackedPost::getTags)
-                    .filter(tags -> tags != null && !tags.isEmpty())
-                    .flatMap(tags -> Arrays.stream(tags.split(",")))
-                    .map(String::trim)
-                    .filter(tag -> !tag.isEmpty())
+                    .flatMapToInt(tracked -> Arrays.stream(postTrackingService.getTagIds(tracked)))
+                    .distinct()
+                    .mapToObj(tagDictionary::nameOf)
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toSet());
 
             if (tagsToCheck.isEmpty()) {
@@ -230,119 +181,82 @@ public class TumblrCheckSchedule {
 
             log.info("Проверяем {} уникальных тегов", tagsToCheck.size());
 
-            List<TumblrPostDTO> freshPosts = tumblrService.getNewPostsByTags(tagsToCheck);
+            // Сырые ответы из кэша запросов, без фильтров отправки: checkFilters сам пишет метрики
+            // в tracked_posts, и повторный прогон обновлял бы одни и те же посты дважды.
+            // Вместе с заметками обновляются теги: на часть из них могли подписаться после записи поста.
+            Set<Long> trackedIds = postsToRecheck.stream()
+                    .map(tracked -> Long.parseLong(tracked.getPostId()))
+                    .collect(Collectors.toSet());
+            Map<Long, TumblrPostDTO> freshPosts = new HashMap<>();
+            tumblrService.fetchByTags(tagsToCheck, batch -> {
+                for (TumblrPostDTO post : batch.posts()) {
+                    if (trackedIds.contains(post.getId())) {
+                        freshPosts.putIfAbsent(post.getId(), post);
+                    }
+                }
+            });
 
             if (freshPosts.isEmpty()) {
                 log.info("Не получено свежих данных от Tumblr API");
                 return;
             }
 
-            Map<String, TumblrPostDTO> freshPostsMap = freshPosts.stream()
-                    .collect(Collectors.toMap(TumblrPostDTO::getId, p -> p, (p1, p2) -> p1));
-
-            int updatedCount = 0;
-
-            for (TrackedPost tracked : postsToRecheck) {
-                TumblrPostDTO freshData = freshPostsMap.get(tracked.getPostId());
-
-                if (freshData != null && freshData.getNoteCount() != null) {
-                    try {
-                        int newCount = Integer.parseInt(freshData.getNoteCount());
-                        postTrackingService.updatePostMetrics(tracked.getPostId(), newCount);
-                        updatedCount++;
-                    } catch (NumberFormatException e) {
-                        log.warn("Некорректное значение noteCount для поста {}: {}",
-                                tracked.getPostId(), freshData.getNoteCount());
-                    }
-                }
+            for (TumblrPostDTO post : freshPosts.values()) {
+                postTrackingService.updatePostMetrics(String.valueOf(post.getId()), post.getNoteCount(), post.getTagIds());
             }
 
-            log.info("Обновлено метрик у {} постов", updatedCount);
+            log.info("Обновлено метрик у {} постов", freshPosts.size());
 
         } catch (Exception e) {
             log.error("Ошибка при повторной проверке метрик", e);
         }
     }
 
-    @Scheduled(cron = "${tumblr.cleanup.cron:0 0 3 * * ?}")
+    @Scheduled(cron = "${tumblr.cleanup.cron:0 0 3 * * ?}", scheduler = "maintenanceScheduler")
     public void cleanupOldPosts() {
+        jobRunner.run("cleanup", this::doCleanupOldPosts);
+    }
+
+    private void doCleanupOldPosts() {
         try {
             log.info("Начало очистки старых данных");
             postTrackingService.cleanUpOldPosts();
             userPostTrackingService.cleanupOldDeliveries(7);
+            deliveryOutboxService.cleanupFinished(7);
             log.info("Очистка завершена");
         } catch (Exception e) {
             log.error("Ошибка в процессе очистки", e);
         }
     }
 
-     // Каждый пользователь получает посты в своем собственном потоке с задержками
-     private void sendPostsToUsersAsync(Map<Long, List<TumblrPostDTO>> postsPerUser) {
-         AtomicInteger totalSent = new AtomicInteger(0);
-         AtomicInteger totalFailed = new AtomicInteger(0);
-
-         List<CompletableFuture<Void>> userTasks = new ArrayList<>();
-
-         for (Map.Entry<Long, List<TumblrPostDTO>> entry : postsPerUser.entrySet()) {
-             Long userId = entry.getKey();
-             List<TumblrPostDTO> posts = entry.getValue();
-
-             CompletableFuture<Void> userTask = CompletableFuture.runAsync(() -> {
-                 for (int i = 0; i < posts.size(); i++) {
-                     TumblrPostDTO post = posts.get(i);
-
-                     try {
-                         boolean sent = notificationService.sendPostToUser(userId, post);
-
-                         if (sent) {
-                             totalSent.incrementAndGet();
-                             userPostTrackingService.markAsSent(userId, post.getId());
-                             postTrackingService.markPostAsSent(post.getId());
-                         } else {
-                             totalFailed.incrementAndGet();
-                         }
-
-                         if (i < posts.size() - 1) {
-                             Thread.sleep(delayBetweenPosts.toMillis());
-                         }
-
-                     } catch (InterruptedException e) {
-                         Thread.currentThread().interrupt();
-                         log.error("Отправка пользователю {} прервана", userId, e);
-                         break;
-                     } catch (Exception e) {
-                         totalFailed.incrementAndGet();
-                         log.error("Ошибка при отправке поста {} пользователю {}", post.getId(), userId, e);
-                     }
-                 }
-
-                 log.info("Завершена отправка постов пользователю {}", userId);
-             }, userExecutor).exceptionally(ex -> {
-                 log.error("Критическая ошибка при обработке пользователя {}", userId, ex);
-                 return null;
-             });
-
-             userTasks.add(userTask);
-         }
-     }
-
-    private TumblrPostDTO createDTOFromTrackedPost(TrackedPost tracked) {
+    // Посты не отправляются здесь: они ставятся в персистентную очередь доставки,
+    // которую разбирает DeliveryWorker с интервалом между постами для каждого пользователя
+    private void enqueueForDelivery(Map<Long, List<TumblrPostDTO>> postsPerUser) {
+        int totalEnqueued = 0;
+
+        for (Map.Entry<Long, List<TumblrPostDTO>> entry : postsPerUser.entrySet()) {
+            try {
+                boolean digest = subscriptionSnapshot.isDigest(entry.getKey());
+                totalEnqueued += deliveryOutboxService.enqueue(entry.getKey(), entry.getValue(), digest);
+            } catch (Exception e) {
+                log.error("Не удалось поставить посты в очередь пользователю {}", entry.getKey(), e);
+            }
+        }
+
+        // Вызывается на каждую пачку тегов - в лог идут только итоги цикла
+        CycleLog.count("outbox.enqueued", totalEnqueued);
+    }
+
+    private TumblrPostDTO createDTOFromTrackedPost(TrackedPost tracked, int[] tagIds) {
         TumblrPostDTO dto = new TumblrPostDTO();
 
-        dto.setId(tracked.getPostId());
+        dto.setId(Long.parseLong(tracked.getPostId()));
         dto.setBlogName(tracked.getBlogName());
         dto.setPostURL(tracked.getPostUrl());
-
-        if (tracked.getTags() != null) {
-            List<String> tags = Arrays.stream(tracked.getTags().split(","))
-                    .map(String::trim)
-                    .filter(tag -> !tag.isEmpty())
-                    .collect(Collectors.toList());
-            dto.setTags(tags);
-        }
+        dto.setTagIds(tagIds);
 
         if (tracked.getNoteCount() != null) {
-            dto.setNoteCount(String.valueOf(tracked.getNoteCount()));
+            dto.setNoteCount(tracked.getNoteCount());
         }
 
         return dto;
@@ -0,0 +1,267 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import TelegramBot.TumblrTagTracker.repositories.DeliveryOutboxRepository;
+import TelegramBot.TumblrTagTracker.util.PostJsonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Персистентная очередь доставки: вместо планов в памяти каждая отправка - строка в БД
+// с временем отправки и счётчиком попыток. Воркеры забирают строки с арендой (lease),
+// так что после рестарта или падения доставка продолжается с того же места.
+@Service
+@Transactional
+public class DeliveryOutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryOutboxService.class);
+    private static final List<DeliveryOutbox.Status> QUEUED =
+            List.of(DeliveryOutbox.Status.PENDING, DeliveryOutbox.Status.IN_PROGRESS);
+    private static final List<DeliveryOutbox.Status> FINISHED =
+            List.of(DeliveryOutbox.Status.SENT, DeliveryOutbox.Status.FAILED);
+
+    // Telegram принимает в альбоме не больше 10 медиа
+    public static final int MAX_DIGEST_SIZE = 10;
+
+    // Идентификатор инстанса, которым помечаются забранные записи
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final DeliveryOutboxRepository outboxRepository;
+    private final PostJsonCodec postJsonCodec;
+
+    // Ожидающие и забранные записи по пользователям; меняется после коммита транзакции.
+    // Видит только изменения этого инстанса: запись, поставленная здесь и отправленная другим
+    // инстансом, не уменьшит счётчик. Поэтому он периодически сверяется с БД
+    // (reconcileQueueDepths) и между сверками остаётся приблизительным.
+    private final Map<Long, Integer> queuedByUser = new ConcurrentHashMap<>();
+
+    @Value("${notification.delay.between.posts.ms:60000}")
+    private long delayBetweenPostsMs;
+
+    // Окно, в которое копятся посты дайджеста: пачки тегов одного цикла уходят одним дайджестом
+    @Value("${notification.digest.window:2m}")
+    private Duration digestWindow;
+
+    @Value("${notification.outbox.lease:5m}")
+    private Duration lease;
+
+    @Value("${notification.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Autowired
+    public DeliveryOutboxService(DeliveryOutboxRepository outboxRepository, PostJsonCodec postJsonCodec) {
+        this.outboxRepository = outboxRepository;
+        this.postJsonCodec = postJsonCodec;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadQueueDepths() {
+        reconcileQueueDepths();
+        log.info("Загружена глубина очереди доставки: {} пользователей", queuedByUser.size());
+    }
+
+    // Заменяет счётчики данными из БД: так учитываются записи, отправленные другими инстансами
+    public void reconcileQueueDepths() {
+        Map<Long, Integer> actual = new HashMap<>();
+        outboxRepository.countQueuedByUser(QUEUED)
+                .forEach(row -> actual.put(row.getUserId(), row.getQueued().intValue()));
+        queuedByUser.keySet().retainAll(actual.keySet());
+        queuedByUser.putAll(actual);
+    }
+
+    public Map<Long, Integer> queuedPerUser() {
+        return Map.copyOf(queuedByUser);
+    }
+
+    // Ставит посты пользователю в очередь, соблюдая интервал между отправками.
+    // В режиме дайджеста все посты получают одно время и уйдут пачкой.
+    public int enqueue(Long userId, List<TumblrPostDTO> posts, boolean digest) {
+        Duration delay = Duration.ofMillis(delayBetweenPostsMs);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime latest = outboxRepository.findLatestDueAt(userId, QUEUED);
+        LocalDateTime nextDue = latest != null && latest.plus(delay).isAfter(now) ? latest.plus(delay) : now;
+        if (digest) {
+            // Присоединяемся к ещё не отправленному дайджесту или открываем новое окно
+            nextDue = latest != null && latest.isAfter(now) ? latest : max(nextDue, now.plus(digestWindow));
+        }
+
+        // Уже стоящие в очереди посты проверяем одним запросом, новые строки сохраняем пачкой
+        Set<String> queued = new HashSet<>(outboxRepository.findQueuedPostIds(userId,
+                posts.stream().map(post -> String.valueOf(post.getId())).toList()));
+
+        List<DeliveryOutbox> rows = new ArrayList<>();
+        for (TumblrPostDTO post : posts) {
+            String postId = String.valueOf(post.getId());
+            if (!queued.add(postId)) {
+                continue;
+            }
+
+            rows.add(new DeliveryOutbox(userId, postId, postJsonCodec.encode(post), nextDue, digest));
+            if (!digest) {
+                nextDue = nextDue.plus(delay);
+            }
+        }
+        outboxRepository.saveAll(rows);
+        adjustQueued(userId, rows.size());
+
+        log.debug("В очередь пользователю {} поставлено {} постов", userId, rows.size());
+        return rows.size();
+    }
+
+    // Забирает до maxUnits единиц работы: по одной на пользователя, по кругу, начиная с тех,
+    // кто дольше всех ждёт. Единица - одна запись или, для дайджеста, до MAX_DIGEST_SIZE записей,
+    // так что пользователь со множеством тегов не занимает пул надолго и не задерживает остальных.
+    public List<DeliveryOutbox> claimDue(int maxUnits) {
+        LocalDateTime now = LocalDateTime.now();
+
+        int released = outboxRepository.releaseExpiredLeases(
+                DeliveryOutbox.Status.PENDING, DeliveryOutbox.Status.IN_PROGRESS, now);
+        if (released > 0) {
+            log.warn("Возвращено в очередь {} записей с истёкшей арендой", released);
+        }
+
+        List<Long> candidateIds = outboxRepository.findFairCandidateIds(now, MAX_DIGEST_SIZE, maxUnits * MAX_DIGEST_SIZE);
+        if (candidateIds.isEmpty()) {
+            return List.of();
+        }
+
+        // Блокировка возвращает строки в произвольном порядке - восстанавливаем порядок кандидатов
+        Map<Long, DeliveryOutbox> lockedById = new HashMap<>();
+        outboxRepository.findByIdsForUpdate(candidateIds, DeliveryOutbox.Status.PENDING)
+                .forEach(row -> lockedById.put(row.getId(), row));
+
+        // Режим единицы задаёт первая забранная запись пользователя. После /digest on|off у него
+        // могут лежать записи обоих режимов: берём только подряд идущие записи того же режима,
+        // иначе обычные посты ушли бы внутри дайджеста или друг за другом без интервала.
+        Map<Long, Boolean> digestByUser = new HashMap<>();
+        Map<Long, Integer> claimedPerUser = new HashMap<>();
+        Set<Long> closedUsers = new HashSet<>();
+        List<DeliveryOutbox> claimed = new ArrayList<>();
+
+        for (Long id : candidateIds) {
+            DeliveryOutbox row = lockedById.get(id);
+            if (row == null) {
+                continue; // забрал другой инстанс
+            }
+            Long userId = row.getUserId();
+            boolean digest = Boolean.TRUE.equals(row.getDigest());
+            Boolean unitDigest = digestByUser.get(userId);
+            if (unitDigest == null) {
+                if (digestByUser.size() >= maxUnits) {
+                    continue;
+                }
+                digestByUser.put(userId, digest);
+                unitDigest = digest;
+            }
+            if (closedUsers.contains(userId)) {
+                continue;
+            }
+            if (unitDigest != digest) {
+                closedUsers.add(userId);
+                continue;
+            }
+            int allowed = unitDigest ? MAX_DIGEST_SIZE : 1;
+            if (claimedPerUser.merge(userId, 1, Integer::sum) > allowed) {
+                continue;
+            }
+            row.setStatus(DeliveryOutbox.Status.IN_PROGRESS);
+            row.setClaimedBy(instanceId);
+            row.setLeaseUntil(now.plus(lease));
+            claimed.add(row);
+        }
+
+        return outboxRepository.saveAll(claimed);
+    }
+
+    // Откат транзакции не должен менять счётчик, поэтому изменение применяется после коммита
+    private void adjustQueued(Long userId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Runnable apply = () -> queuedByUser.compute(userId, (id, queued) -> {
+            int updated = (queued != null ? queued : 0) + delta;
+            return updated > 0 ? updated : null;
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    public TumblrPostDTO readPost(DeliveryOutbox row) {
+        return postJsonCodec.decode(row.getPayload());
+    }
+
+    public void markSent(Long id) {
+        outboxRepository.findById(id).ifPresent(row -> {
+            if (QUEUED.contains(row.getStatus())) {
+                adjustQueued(row.getUserId(), -1);
+            }
+            row.setStatus(DeliveryOutbox.Status.SENT);
+            row.setSentAt(LocalDateTime.now());
+            row.setLeaseUntil(null);
+            outboxRepository.save(row);
+        });
+    }
+
+    // Неудачная попытка: повторяем с экспоненциальной задержкой, после maxAttempts сдаёмся
+    public void markFailed(Long id, String error) {
+        outboxRepository.findById(id).ifPresent(row -> {
+            int attempts = row.getAttempts() + 1;
+            row.setAttempts(attempts);
+            row.setLastError(error != null && error.length() > 500 ? error.substring(0, 500) : error);
+            row.setLeaseUntil(null);
+            row.setClaimedBy(null);
+
+            if (attempts >= maxAttempts) {
+                row.setStatus(DeliveryOutbox.Status.FAILED);
+                adjustQueued(row.getUserId(), -1);
+                log.error("Доставка поста {} пользователю {} не удалась после {} попыток",
+                        row.getPostId(), row.getUserId(), attempts);
+            } else {
+                row.setStatus(DeliveryOutbox.Status.PENDING);
+                row.setDueAt(LocalDateTime.now().plusMinutes(1L << attempts));
+            }
+            outboxRepository.save(row);
+        });
+    }
+
+    // Отдаём обратно записи, которые забрали, но не начали отправлять (например, при остановке)
+    public void release(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        int released = outboxRepository.releaseByIds(ids, DeliveryOutbox.Status.PENDING, DeliveryOutbox.Status.IN_PROGRESS);
+        log.info("Возвращено в очередь {} записей", released);
+    }
+
+    public void cleanupFinished(int daysOld) {
+        int deleted = outboxRepository.deleteFinishedBefore(FINISHED, LocalDateTime.now().minusDays(daysOld));
+        if (deleted > 0) {
+            log.info("Удалено {} завершённых записей очереди доставки", deleted);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.repositories.TrackedPostRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+// Индекс отпечаток -> id поста-владельца. Первый отслеживаемый пост с данным содержимым
+// становится владельцем; реблоги дальше идут под его id, добавляя к нему свои теги.
+@Service
+public class FingerprintIndex {
+
+    private final TrackedPostRepository trackedPostRepository;
+    private final Cache<String, Long> ownerByFingerprint;
+
+    @Autowired
+    public FingerprintIndex(TrackedPostRepository trackedPostRepository,
+                            @Value("${tumblr.fingerprint.cache.ttl:24h}") Duration cacheTtl,
+                            @Value("${tumblr.fingerprint.cache.max-size:100000}") long cacheMaxSize) {
+        this.trackedPostRepository = trackedPostRepository;
+        this.ownerByFingerprint = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(cacheTtl)
+                .build();
+    }
+
+    // id отслеживаемого поста с таким же содержимым; 0, если такого ещё нет
+    public long ownerOf(TumblrPostDTO post) {
+        String fingerprint = post.getFingerprint();
+        if (fingerprint == null || post.getId() == 0) {
+            return 0;
+        }
+
+        Long owner = ownerByFingerprint.getIfPresent(fingerprint);
+        if (owner == null) {
+            // Отсутствие не кэшируем: владельцем станет только пост, который действительно записан
+            owner = trackedPostRepository.findFirstByFingerprint(fingerprint)
+                    .map(tracked -> Long.parseLong(tracked.getPostId()))
+                    .orElse(null);
+            if (owner == null) {
+                return 0;
+            }
+            ownerByFingerprint.put(fingerprint, owner);
+        }
+        return owner;
+    }
+
+    // Пост записан в tracked_posts - с этого момента он владелец своего отпечатка
+    public void register(TumblrPostDTO post) {
+        if (post.getFingerprint() != null && post.getId() != 0) {
+            ownerByFingerprint.asMap().putIfAbsent(post.getFingerprint(), post.getId());
+        }
+    }
+}
@@ -1,39 +1,54 @@
 package TelegramBot.TumblrTagTracker.services;
 
 import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
-import TelegramBot.TumblrTagTracker.util.ContentExtractor;
+import TelegramBot.TumblrTagTracker.monitoring.TelegramSendEvent;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaVideo;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.util.Optional;
+import java.util.*;
 
 @Service
 public class NotificationService {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
 
+    private static final int MAX_MEDIA_GROUP_SIZE = 10;
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final String DIGEST_SEPARATOR = "\n\n";
+
     private final TelegramLongPollingBot bot;
-    private final ContentExtractor contentExtractor;
+    // Прокси этого же бина: посты дайджеста по одному отправляются через него,
+    // иначе @CircuitBreaker и @Retry на sendPostToUser не срабатывают
+    private final NotificationService self;
 
     @Autowired
-    public NotificationService(TelegramLongPollingBot bot, ContentExtractor contentExtractor) {
+    public NotificationService(TelegramLongPollingBot bot, @Lazy NotificationService self) {
         this.bot = bot;
-        this.contentExtractor = contentExtractor;
+        this.self = self;
     }
 
     @CircuitBreaker(name = "telegram", fallbackMethod = "fallbackSendMessage")
     @Retry(name = "telegram")
     public boolean sendPostToUser(Long chatID, TumblrPostDTO post) {
+        TelegramSendEvent event = new TelegramSendEvent();
+        event.begin();
+        event.chatId = chatID;
+        event.outcome = "failed";
         try {
             String message = post.getFormattedMessage();
             String imageUrl = getImageUrl(post);
@@ -41,13 +56,17 @@ public class NotificationService {
 
             // Если есть изображение, отправляем фото с подписью
             if (imageUrl != null && !imageUrl.isEmpty()) {
+                event.method = "photo";
                 sendPhotoWithCaption(chatID, imageUrl, message);
             } else if (videoUrl != null && !videoUrl.isEmpty()) {
+                event.method = "video";
                 sendVideoWithCaption(chatID, videoUrl, message);
             } else {
+                event.method = "text";
                 sendTextMessage(chatID, message);
             }
 
+            event.outcome = "sent";
             log.debug("Пост {} отправлен пользователю {}", post.getId(), chatID);
             return true;
 
@@ -56,27 +75,137 @@ public class NotificationService {
             try {
                 // Fallback: отправляем простым текстом
                 sendTextMessage(chatID, post.getFormattedMessage());
+                event.outcome = "fallback";
                 log.info("Пост {} отправлен пользователю {} простым текстом", post.getId(), chatID);
                 return true;
             } catch (TelegramApiException ex) {
                 log.error("Полностью не удалось отправить пост {} пользователю {}", post.getId(), chatID, ex);
                 return false;
             }
+        } finally {
+            event.commit();
+        }
+    }
+
+    // Дайджест: фото и видео уходят альбомами до 10 штук, текстовые посты склеиваются
+    // в сообщения до 4096 символов. Возвращает id постов, которые удалось доставить,
+    // чтобы повтор не присылал пользователю уже отправленное. Ошибка одного альбома или сообщения
+    // не прерывает дайджест: его посты уходят по одному, и результат всегда частичный, а не пустой.
+    @CircuitBreaker(name = "telegram", fallbackMethod = "fallbackSendDigest")
+    public Set<Long> sendDigestToUser(Long chatID, List<TumblrPostDTO> posts) {
+        Set<Long> delivered = new HashSet<>();
+        List<TumblrPostDTO> mediaPosts = new ArrayList<>();
+        List<TumblrPostDTO> textPosts = new ArrayList<>();
+
+        for (TumblrPostDTO post : posts) {
+            if (isHttpUrl(getImageUrl(post)) || isHttpUrl(getVideoUrl(post))) {
+                mediaPosts.add(post);
+            } else {
+                textPosts.add(post);
+            }
+        }
+
+        for (int from = 0; from < mediaPosts.size(); from += MAX_MEDIA_GROUP_SIZE) {
+            List<TumblrPostDTO> chunk = mediaPosts.subList(from, Math.min(from + MAX_MEDIA_GROUP_SIZE, mediaPosts.size()));
+            if (chunk.size() == 1) {
+                sendSingle(chatID, chunk.get(0), delivered);
+                continue;
+            }
+
+            try {
+                sendMediaGroup(chatID, chunk);
+                chunk.forEach(post -> delivered.add(post.getId()));
+            } catch (TelegramApiException | RuntimeException e) {
+                log.warn("Альбом из {} постов не отправлен пользователю {}, отправляем по одному: {}",
+                        chunk.size(), chatID, e.getMessage());
+                chunk.forEach(post -> sendSingle(chatID, post, delivered));
+            }
+        }
+
+        List<TumblrPostDTO> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (TumblrPostDTO post : textPosts) {
+            String message = post.getFormattedMessage();
+            if (text.length() > 0 && text.length() + DIGEST_SEPARATOR.length() + message.length() > MAX_MESSAGE_LENGTH) {
+                sendTextBatch(chatID, text.toString(), batch, delivered);
+                batch.clear();
+                text.setLength(0);
+            }
+            if (text.length() > 0) {
+                text.append(DIGEST_SEPARATOR);
+            }
+            text.append(message);
+            batch.add(post);
+        }
+        if (!batch.isEmpty()) {
+            sendTextBatch(chatID, text.toString(), batch, delivered);
+        }
+
+        log.debug("Дайджест пользователю {}: доставлено {} из {} постов", chatID, delivered.size(), posts.size());
+        return delivered;
+    }
+
+    private void sendMediaGroup(Long chatID, List<TumblrPostDTO> posts) throws TelegramApiException {
+        List<InputMedia> medias = new ArrayList<>();
+
+        for (TumblrPostDTO post : posts) {
+            String imageUrl = getImageUrl(post);
+            InputMedia media = isHttpUrl(imageUrl) ? new InputMediaPhoto(imageUrl) : new InputMediaVideo(getVideoUrl(post));
+
+            String caption = post.getFormattedMessage();
+            if (caption != null && caption.length() > 1024) {
+                caption = caption.substring(0, 1021) + "...";
+            }
+            if (caption != null && !caption.trim().isEmpty()) {
+                media.setCaption(caption);
+                media.setParseMode("MarkdownV2");
+            }
+            medias.add(media);
+        }
+
+        SendMediaGroup group = new SendMediaGroup();
+        group.setChatId(chatID.toString());
+        group.setMedias(medias);
+
+        try {
+            bot.execute(group);
+        } catch (TelegramApiException e) {
+            log.error("Ошибка sendMediaGroup для чата {}: {}", chatID, e.getMessage());
+            throw e;
         }
     }
 
+    private void sendTextBatch(Long chatID, String text, List<TumblrPostDTO> batch, Set<Long> delivered) {
+        if (batch.size() == 1) {
+            sendSingle(chatID, batch.get(0), delivered);
+            return;
+        }
+
+        try {
+            sendTextMessage(chatID, text);
+            batch.forEach(post -> delivered.add(post.getId()));
+        } catch (TelegramApiException | RuntimeException e) {
+            log.warn("Текстовый дайджест не отправлен пользователю {}, отправляем по одному", chatID);
+            batch.forEach(post -> sendSingle(chatID, post, delivered));
+        }
+    }
+
+    private void sendSingle(Long chatID, TumblrPostDTO post, Set<Long> delivered) {
+        if (self.sendPostToUser(chatID, post)) {
+            delivered.add(post.getId());
+        }
+    }
+
+    private boolean isHttpUrl(String url) {
+        return url != null && url.startsWith("http");
+    }
+
     private String getImageUrl(TumblrPostDTO post) {
-        return Optional.ofNullable(post.getPhotoUrl())
-                .filter(url -> !url.isEmpty())
-                .or(() -> contentExtractor.extractFirstImageUrl(post.getBody()))
-                .orElse(null);
+        return post.getPreview().photoUrl();
     }
 
     private String getVideoUrl(TumblrPostDTO post) {
-        return Optional.ofNullable(post.getVideoUrl())
-                .filter(url -> !url.isEmpty())
-                .or(() -> contentExtractor.extractFirstVideoUrl(post.getBody()))
-                .orElse(null);
+        return post.getPreview().videoUrl();
     }
 
     private void sendTextMessage(Long chatID, String text) throws TelegramApiException {
@@ -162,4 +291,10 @@ public class NotificationService {
         log.error("Failed to send post {} to user {} after retries", post.getId(), chatID, e);
         return false;
     }
+
+    // Сюда попадаем, только если circuit breaker открыт до начала отправки: ничего не ушло
+    private Set<Long> fallbackSendDigest(Long chatID, List<TumblrPostDTO> posts, Exception e) {
+        log.error("Failed to send digest of {} posts to user {}", posts.size(), chatID, e);
+        return Collections.emptySet();
+    }
 }
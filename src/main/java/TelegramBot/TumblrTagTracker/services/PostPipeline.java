@@ -0,0 +1,172 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.util.CycleLog;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Конвейер цикла проверки: сбор -> глобальные фильтры -> рассылка по подписчикам -> очередь доставки.
+// Стадии связаны ограниченными очередями: посты тега уходят дальше сразу после его запроса,
+// а если следующая стадия не успевает, предыдущая ждёт на put (backpressure).
+@Service
+public class PostPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(PostPipeline.class);
+
+    private static final TumblrService.TagBatch END_OF_BATCHES = new TumblrService.TagBatch(null, List.of());
+    private static final Map<Long, List<TumblrPostDTO>> END_OF_DELIVERIES = new HashMap<>();
+
+    private final TumblrService tumblrService;
+    private final UserPostTrackingService userPostTrackingService;
+    private final ExecutorService stageExecutor;
+    private final int queueCapacity;
+
+    // Очереди текущего прогона, чтобы можно было посмотреть их глубину со стороны
+    private volatile BlockingQueue<TumblrService.TagBatch> fetchedQueue = new ArrayBlockingQueue<>(1);
+    private volatile BlockingQueue<TumblrService.TagBatch> filteredQueue = new ArrayBlockingQueue<>(1);
+    private volatile BlockingQueue<Map<Long, List<TumblrPostDTO>>> deliveryQueue = new ArrayBlockingQueue<>(1);
+
+    public record PipelineResult(int fetchedPosts, int acceptedPosts, int recipients, int deliveries) {
+    }
+
+    @Autowired
+    public PostPipeline(TumblrService tumblrService, UserPostTrackingService userPostTrackingService,
+                        @Value("${tumblr.pipeline.queue-capacity:16}") int queueCapacity) {
+        this.tumblrService = tumblrService;
+        this.userPostTrackingService = userPostTrackingService;
+        this.queueCapacity = queueCapacity;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.stageExecutor = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-stage-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized PipelineResult run(Set<String> tags, SubscriberIndex subscriberIndex,
+                                           Consumer<Map<Long, List<TumblrPostDTO>>> deliverySink) {
+        BlockingQueue<TumblrService.TagBatch> fetched = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TumblrService.TagBatch> filtered = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Map<Long, List<TumblrPostDTO>>> deliveries = new ArrayBlockingQueue<>(queueCapacity);
+        fetchedQueue = fetched;
+        filteredQueue = filtered;
+        deliveryQueue = deliveries;
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger recipients = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+
+        // Пост может прийти по нескольким тегам - фильтруем и рассылаем его один раз
+        Set<Long> seenPostIds = ConcurrentHashMap.newKeySet();
+
+        Future<?> filterStage = stageExecutor.submit(CycleLog.propagate(() -> stage("filter", fetched, filtered, END_OF_BATCHES, batch -> {
+            List<TumblrPostDTO> fresh = batch.posts().stream()
+                    .filter(post -> post.getId() != 0 && seenPostIds.add(post.getId()))
+                    .toList();
+            List<TumblrPostDTO> passed = tumblrService.filterNewPosts(new TumblrService.TagBatch(batch.tag(), fresh));
+            accepted.addAndGet(passed.size());
+            if (!passed.isEmpty()) {
+                put(filtered, new TumblrService.TagBatch(batch.tag(), passed));
+            }
+        })));
+
+        Future<?> fanOutStage = stageExecutor.submit(CycleLog.propagate(() -> stage("fan-out", filtered, deliveries, END_OF_DELIVERIES, batch -> {
+            Map<Long, List<TumblrPostDTO>> postsPerUser = userPostTrackingService.selectRecipients(batch.posts(), subscriberIndex);
+            recipients.addAndGet(postsPerUser.size());
+            if (!postsPerUser.isEmpty()) {
+                put(deliveries, postsPerUser);
+            }
+        })));
+
+        Future<?> deliveryStage = stageExecutor.submit(CycleLog.propagate(() -> stage("delivery", deliveries, null, null, postsPerUser -> {
+            deliverySink.accept(postsPerUser);
+            delivered.addAndGet(postsPerUser.values().stream().mapToInt(List::size).sum());
+        })));
+
+        int fetchedPosts = 0;
+        try {
+            fetchedPosts = tumblrService.fetchByTags(tags, batch -> {
+                put(fetched, batch);
+                if (log.isDebugEnabled()) {
+                    log.debug("Глубина очередей: {}", queueDepths());
+                }
+            });
+        } finally {
+            put(fetched, END_OF_BATCHES);
+        }
+
+        awaitStage(filterStage);
+        awaitStage(fanOutStage);
+        awaitStage(deliveryStage);
+
+        return new PipelineResult(fetchedPosts, accepted.get(), recipients.get(), delivered.get());
+    }
+
+    // Сколько единиц работы ждёт перед каждой стадией
+    public Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        depths.put("filter", fetchedQueue.size());
+        depths.put("fan-out", filteredQueue.size());
+        depths.put("delivery", deliveryQueue.size());
+        return depths;
+    }
+
+    // Стадия работает до маркера конца; ошибка одной пачки не останавливает поток,
+    // иначе предыдущая стадия повисла бы на полной очереди
+    private <I, O> void stage(String name, BlockingQueue<I> input, BlockingQueue<O> output, O endMarker,
+                              Consumer<I> handler) {
+        try {
+            while (true) {
+                I item = input.take();
+                if (item == END_OF_BATCHES || item == END_OF_DELIVERIES) {
+                    break;
+                }
+                try {
+                    handler.accept(item);
+                } catch (Exception e) {
+                    log.error("Ошибка на стадии {} конвейера", name, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (output != null) {
+                put(output, endMarker);
+            }
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Конвейер прерван", e);
+        }
+    }
+
+    private static void awaitStage(Future<?> stage) {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Стадия конвейера завершилась с ошибкой", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
+    }
+}
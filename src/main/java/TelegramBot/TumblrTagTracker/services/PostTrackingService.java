@@ -2,6 +2,7 @@ package TelegramBot.TumblrTagTracker.services;
 
 import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
 import TelegramBot.TumblrTagTracker.models.TrackedPost;
+import TelegramBot.TumblrTagTracker.monitoring.PostFilterEvent;
 import TelegramBot.TumblrTagTracker.repositories.TrackedPostRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,8 +11,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -35,23 +38,46 @@ public class PostTrackingService {
     private int cleanupAfterDays;
 
     private final TrackedPostRepository trackedPostRepository;
+    private final TagDictionary tagDictionary;
+
+    // Счётчики с последних проверок отложенных постов - админский API не сканирует таблицу сам
+    private volatile PendingCount readyToSend = PendingCount.UNKNOWN;
+    private volatile PendingCount awaitingRecheck = PendingCount.UNKNOWN;
+
+    public record PendingCount(int count, Instant countedAt) {
+        static final PendingCount UNKNOWN = new PendingCount(-1, null);
+    }
 
     @Autowired
-    public PostTrackingService(TrackedPostRepository trackedPostRepository) {
+    public PostTrackingService(TrackedPostRepository trackedPostRepository, TagDictionary tagDictionary) {
         this.trackedPostRepository = trackedPostRepository;
+        this.tagDictionary = tagDictionary;
     }
 
     // Проверка, нужно ли отправить пост сейчас (глобальные фильтры)
     public boolean shouldSendPostNow(TumblrPostDTO post) {
+        PostFilterEvent event = new PostFilterEvent();
+        event.begin();
+        boolean passed = checkFilters(post);
+        event.postId = post.getId();
+        event.noteCount = post.getNoteCount();
+        event.passed = passed;
+        event.commit();
+        return passed;
+    }
+
+    private boolean checkFilters(TumblrPostDTO post) {
 
-        Optional<TrackedPost> trackedPost = trackedPostRepository.findByPostId(post.getId());
+        Optional<TrackedPost> trackedPost = trackedPostRepository.findByPostId(String.valueOf(post.getId()));
 
         if (trackedPost.isPresent()) {
             TrackedPost tracked = trackedPost.get();
 
-            if (post.getNoteCount() != null) {
-                tracked.setNoteCount(Integer.parseInt(post.getNoteCount()));
+            if (post.getNoteCount() != TumblrPostDTO.UNKNOWN_NOTE_COUNT) {
+                tracked.setNoteCount(post.getNoteCount());
             }
+            // Реблог приходит под id исходного поста со своими тегами - отложенная отправка их тоже учтёт
+            addTagIds(tracked, post.getTagIds());
             tracked.setLastCheckedAt(LocalDateTime.now());
             trackedPostRepository.save(tracked);
 
@@ -63,17 +89,20 @@ public class PostTrackingService {
                 log.debug("Пост {} сразу прошел фильтры.", post.getId());
                 return true;
             } else {
-                log.debug("Пост {} не прошел фильтры (noteCount: {}, age: {}h).",
-                        post.getId(), tracked.getNoteCount(),
-                        tracked.getPostCreatedAt() != null ?
-                                java.time.Duration.between(tracked.getPostCreatedAt(), LocalDateTime.now()).toHours() : "unknown");
+                // Три аргумента - это varargs-массив и boxing даже при выключенном DEBUG, поэтому проверка уровня
+                if (log.isDebugEnabled()) {
+                    log.debug("Пост {} не прошел фильтры (noteCount: {}, age: {}h).",
+                            post.getId(), tracked.getNoteCount(),
+                            tracked.getPostCreatedAt() != null ?
+                                    java.time.Duration.between(tracked.getPostCreatedAt(), LocalDateTime.now()).toHours() : "unknown");
+                }
                 return false;
             }
         } else {
             // Первый раз видим этот пост - сохраняем для отслеживания
             TrackedPost newTracked = createTrackedPost(post);
-            if (post.getNoteCount() != null) {
-                newTracked.setNoteCount(Integer.parseInt(post.getNoteCount()));
+            if (post.getNoteCount() != TumblrPostDTO.UNKNOWN_NOTE_COUNT) {
+                newTracked.setNoteCount(post.getNoteCount());
             }
             trackedPostRepository.save(newTracked);
 
@@ -84,8 +113,10 @@ public class PostTrackingService {
                 log.debug("Новый пост {} сразу прошел фильтр.", post.getId());
                 return true;
             } else {
-                log.debug("Новый пост {} добавлен для отслеживания (noteCount: {}).",
-                        post.getId(), newTracked.getNoteCount());
+                if (log.isDebugEnabled()) {
+                    log.debug("Новый пост {} добавлен для отслеживания (noteCount: {}).",
+                            post.getId(), newTracked.getNoteCount());
+                }
                 return false;
             }
         }
@@ -104,15 +135,27 @@ public class PostTrackingService {
         List<TrackedPost> candidates = trackedPostRepository.findUnsentPostsWithMinimumNotes(minimumNotes);
 
         // Дополнительно фильтруем по возрасту
-        return candidates.stream()
+        List<TrackedPost> ready = candidates.stream()
                 .filter(post -> post.isOldEnough(minimumAgeHours))
                 .collect(Collectors.toList());
+        readyToSend = new PendingCount(ready.size(), Instant.now());
+        return ready;
     }
 
     // Находит посты для повторной проверки метрик
     public List<TrackedPost> findPostsForRecheck() {
         LocalDateTime checkBefore = LocalDateTime.now().minusHours(recheckIntervalHours);
-        return trackedPostRepository.findPostsForRecheck(checkBefore);
+        List<TrackedPost> posts = trackedPostRepository.findPostsForRecheck(checkBefore);
+        awaitingRecheck = new PendingCount(posts.size(), Instant.now());
+        return posts;
+    }
+
+    public PendingCount readyToSendCount() {
+        return readyToSend;
+    }
+
+    public PendingCount awaitingRecheckCount() {
+        return awaitingRecheck;
     }
 
     // Очищает старые отправленные посты
@@ -126,7 +169,41 @@ public class PostTrackingService {
         }
     }
 
-    public void updatePostMetrics(String postId, int noteCount) {
+    // Отсортированные id тегов поста. У записей, сделанных до словаря, теги есть только текстом
+    public int[] getTagIds(TrackedPost tracked) {
+        int[] stored = tracked.getTagIds().stream().mapToInt(Integer::intValue).sorted().toArray();
+        return TagDictionary.union(stored, tagDictionary.idsIfKnown(legacyTagNames(tracked)));
+    }
+
+    private static List<String> legacyTagNames(TrackedPost tracked) {
+        if (tracked.getTags() == null || tracked.getTags().isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(tracked.getTags().split(","))
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .toList();
+    }
+
+    // Теги дописываются, а не заменяются: реблоги добавляют к посту свои. Теги, которых словарь
+    // не знал при записи, появятся при следующей проверке после подписки на них.
+    // Старая запись с тегами текстом сначала переводится на id.
+    private boolean addTagIds(TrackedPost tracked, int[] tagIds) {
+        if (tagIds == null || tagIds.length == 0) {
+            return false;
+        }
+        if (tracked.getTagIds().isEmpty()) {
+            Arrays.stream(getTagIds(tracked)).forEach(tracked.getTagIds()::add);
+        }
+        boolean changed = false;
+        for (int tagId : tagIds) {
+            changed |= tracked.getTagIds().add(tagId);
+        }
+        return changed;
+    }
+
+    // Свежие заметки и теги поста из повторного запроса к API
+    public void updatePostMetrics(String postId, int noteCount, int[] tagIds) {
         if (postId == null) {
             log.warn("Попытка обновить метрики для null postId");
             return;
@@ -134,30 +211,37 @@ public class PostTrackingService {
 
         trackedPostRepository.findByPostId(postId).ifPresent(tracked -> {
             int oldCount = tracked.getNoteCount() != null ? tracked.getNoteCount() : 0;
+            boolean countChanged = noteCount != TumblrPostDTO.UNKNOWN_NOTE_COUNT && noteCount != oldCount;
+            boolean tagsChanged = addTagIds(tracked, tagIds);
 
-            if (noteCount != oldCount) {
-                tracked.setNoteCount(noteCount);
+            if (countChanged || tagsChanged) {
+                if (countChanged) {
+                    tracked.setNoteCount(noteCount);
+                }
                 tracked.setLastCheckedAt(LocalDateTime.now());
                 trackedPostRepository.save(tracked);
 
                 log.debug("Обновлены метрики поста {}: {} -> {} заметок",
-                        postId, oldCount, noteCount);
+                        postId, oldCount, tracked.getNoteCount());
             }
         });
     }
 
     // Создаём пост для отслеживания
     private TrackedPost createTrackedPost(TumblrPostDTO post) {
-        TrackedPost tracked = new TrackedPost(post.getId());
+        TrackedPost tracked = new TrackedPost(String.valueOf(post.getId()));
+        tracked.setFingerprint(post.getFingerprint());
         tracked.setBlogName(post.getBlogName());
         tracked.setPostUrl(post.getPostURL());
 
-        if (post.getTimestamp() != null) {
+        if (post.getTimestamp() > 0) {
             tracked.setPostCreatedAt(LocalDateTime.ofEpochSecond(post.getTimestamp(), 0, ZoneOffset.UTC));
         }
 
-        if (post.getTags() != null && !post.getTags().isEmpty()) {
-            tracked.setTags(String.join(",", post.getTags()));
+        if (post.getTagIds() != null) {
+            for (int tagId : post.getTagIds()) {
+                tracked.getTagIds().add(tagId);
+            }
         }
         return tracked;
     }
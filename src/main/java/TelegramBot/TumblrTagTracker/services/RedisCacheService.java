@@ -1,5 +1,6 @@
 package TelegramBot.TumblrTagTracker.services;
 
+import TelegramBot.TumblrTagTracker.monitoring.RedisCallEvent;
 import TelegramBot.TumblrTagTracker.util.RedisCacheException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,27 +26,49 @@ public class RedisCacheService {
 
     // Проверка: был ли пост отправлен ЭТОМУ пользователю
     public boolean wasSentToUser(Long userId, String postId) {
+        RedisCallEvent event = new RedisCallEvent();
+        event.begin();
+        event.operation = "wasSentToUser";
         try {
             String key = PREFIX_USER_POST + userId + ":" + postId;
             Boolean exists = redisTemplate.hasKey(key);
-            return Boolean.TRUE.equals(exists);
+            event.result = Boolean.TRUE.equals(exists);
+            return event.result;
         } catch (RedisCacheException e) {
+            event.failed = true;
             log.error("Не удалось проверить отправку поста {} пользователю {}", postId, userId, e);
             return false;
+        } catch (RuntimeException e) {
+            // RedisTemplate бросает DataAccessException: событие отмечает сбой, обработка остаётся за вызывающим
+            event.failed = true;
+            throw e;
+        } finally {
+            event.commit();
         }
     }
 
     // Пометить как отправленный ЭТОМУ пользователю
     public boolean markAsSentToUser(Long userId, String postId) {
+        RedisCallEvent event = new RedisCallEvent();
+        event.begin();
+        event.operation = "markAsSentToUser";
         try {
             String key = PREFIX_USER_POST + userId + ":" + postId;
             Boolean wasSet = redisTemplate.opsForValue().setIfAbsent(key, "1", DEFAULT_TTL);
             log.debug("Пост {} помечен как отправленный пользователю {} (TTL: {})",
                     postId, userId, DEFAULT_TTL);
-            return Boolean.TRUE.equals(wasSet);
+            event.result = Boolean.TRUE.equals(wasSet);
+            return event.result;
         } catch (RedisCacheException e) {
+            event.failed = true;
             log.error("Не удалось пометить пост {} для пользователя {}", postId, userId, e);
             return false;
+        } catch (RuntimeException e) {
+            // RedisTemplate бросает DataAccessException: событие отмечает сбой, обработка остаётся за вызывающим
+            event.failed = true;
+            throw e;
+        } finally {
+            event.commit();
         }
     }
 }
@@ -0,0 +1,199 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.util.InvalidTagExpressionException;
+import TelegramBot.TumblrTagTracker.util.TagExpression;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+// Индекс тег -> подписчики для рассылки. Пользователи пронумерованы плотными порядковыми
+// номерами, подписчики тега - сжатый битмап, так что получатели поста - одно OR по его тегам.
+// Фильтры-выражения всех пользователей лежат в общей структуре: каждая ветка ДНФ
+// привязана к одному из своих обязательных тегов и проверяется только для постов с ним.
+// Ключ выбирается детерминированно, чтобы набор запрашиваемых тегов не зависел от перезапусков.
+public class SubscriberIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriberIndex.class);
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    // Ветка фильтра: все required есть в посте и ни одного excluded
+    private record CompiledClause(int owner, int[] required, int[] excluded) {
+
+        boolean matches(int[] postTagIds) {
+            for (int tagId : required) {
+                if (Arrays.binarySearch(postTagIds, tagId) < 0) {
+                    return false;
+                }
+            }
+            for (int tagId : excluded) {
+                if (Arrays.binarySearch(postTagIds, tagId) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final long[] chatIds;
+    private final int[][] tagIdsByOrdinal;
+    private final Map<Long, Integer> ordinalByChatId;
+    private final Map<Integer, RoaringBitmap> subscribersByTag;
+    private final Map<Integer, List<CompiledClause>> clausesByTag;
+
+    private SubscriberIndex(long[] chatIds, int[][] tagIdsByOrdinal, Map<Long, Integer> ordinalByChatId,
+                            Map<Integer, RoaringBitmap> subscribersByTag, Map<Integer, List<CompiledClause>> clausesByTag) {
+        this.chatIds = chatIds;
+        this.tagIdsByOrdinal = tagIdsByOrdinal;
+        this.ordinalByChatId = ordinalByChatId;
+        this.subscribersByTag = subscribersByTag;
+        this.clausesByTag = clausesByTag;
+    }
+
+    public static SubscriberIndex build(Collection<SubscriptionSnapshot.ActiveSubscription> subscriptions,
+                                        TagDictionary tagDictionary) {
+        List<Long> chatIds = new ArrayList<>();
+        List<int[]> tagIds = new ArrayList<>();
+        Map<Long, Integer> ordinalByChatId = new HashMap<>();
+        Map<Integer, RoaringBitmap> subscribersByTag = new HashMap<>();
+        Map<Integer, List<CompiledClause>> clausesByTag = new HashMap<>();
+        // Фильтры компилируются вторым проходом, когда известны теги всех подписок
+        Map<Integer, SubscriptionSnapshot.ActiveSubscription> withFilters = new LinkedHashMap<>();
+
+        for (SubscriptionSnapshot.ActiveSubscription subscription : subscriptions) {
+            Set<String> filters = subscription.filters();
+            int[] userTagIds = tagDictionary.idsOf(subscription.tags());
+            if ((userTagIds.length == 0 && filters.isEmpty()) || ordinalByChatId.containsKey(subscription.chatId())) {
+                continue;
+            }
+
+            int ordinal = chatIds.size();
+            chatIds.add(subscription.chatId());
+            tagIds.add(userTagIds);
+            ordinalByChatId.put(subscription.chatId(), ordinal);
+
+            for (int tagId : userTagIds) {
+                subscribersByTag.computeIfAbsent(tagId, id -> new RoaringBitmap()).add(ordinal);
+            }
+
+            if (!filters.isEmpty()) {
+                withFilters.put(ordinal, subscription);
+            }
+        }
+
+        for (Map.Entry<Integer, SubscriptionSnapshot.ActiveSubscription> entry : withFilters.entrySet()) {
+            int ordinal = entry.getKey();
+            for (String filter : entry.getValue().filters()) {
+                try {
+                    for (TagExpression.Clause clause : TagExpression.parse(filter).clauses()) {
+                        int[] required = tagDictionary.idsOf(clause.required());
+                        int[] excluded = tagDictionary.idsOf(clause.excluded());
+                        int key = chooseKey(required, subscribersByTag, clausesByTag);
+                        clausesByTag.computeIfAbsent(key, id -> new ArrayList<>())
+                                .add(new CompiledClause(ordinal, required, excluded));
+                    }
+                } catch (InvalidTagExpressionException e) {
+                    log.warn("Пропускаем некорректный фильтр пользователя {}: {}",
+                            entry.getValue().chatId(), filter);
+                }
+            }
+        }
+
+        subscribersByTag.values().forEach(RoaringBitmap::runOptimize);
+
+        return new SubscriberIndex(
+                chatIds.stream().mapToLong(Long::longValue).toArray(),
+                tagIds.toArray(new int[0][]),
+                ordinalByChatId,
+                subscribersByTag,
+                clausesByTag);
+    }
+
+    // Ключ ветки - тег, который и так запрашивается: сначала теги подписок, затем ключи
+    // уже собранных веток, иначе тег с наименьшим id. Лишний запрос к Tumblr нужен только
+    // когда ни один обязательный тег ветки больше никем не отслеживается.
+    private static int chooseKey(int[] required, Map<Integer, RoaringBitmap> subscribersByTag,
+                                 Map<Integer, List<CompiledClause>> clausesByTag) {
+        int best = required[0];
+        int bestRank = keyRank(best, subscribersByTag, clausesByTag);
+        for (int tagId : required) {
+            int rank = keyRank(tagId, subscribersByTag, clausesByTag);
+            if (rank < bestRank || (rank == bestRank && tagId < best)) {
+                best = tagId;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private static int keyRank(int tagId, Map<Integer, RoaringBitmap> subscribersByTag,
+                               Map<Integer, List<CompiledClause>> clausesByTag) {
+        if (subscribersByTag.containsKey(tagId)) {
+            return 0;
+        }
+        return clausesByTag.containsKey(tagId) ? 1 : 2;
+    }
+
+    // Подписчики хотя бы одного из тегов поста плюс владельцы сработавших фильтров
+    public RoaringBitmap match(int[] postTagIds) {
+        if (postTagIds == null || postTagIds.length == 0) {
+            return EMPTY;
+        }
+
+        List<RoaringBitmap> bitmaps = new ArrayList<>(postTagIds.length + 1);
+        RoaringBitmap filtered = null;
+
+        for (int tagId : postTagIds) {
+            RoaringBitmap subscribers = subscribersByTag.get(tagId);
+            if (subscribers != null) {
+                bitmaps.add(subscribers);
+            }
+
+            List<CompiledClause> candidates = clausesByTag.get(tagId);
+            if (candidates != null) {
+                for (CompiledClause clause : candidates) {
+                    if (clause.matches(postTagIds)) {
+                        if (filtered == null) {
+                            filtered = new RoaringBitmap();
+                        }
+                        filtered.add(clause.owner());
+                    }
+                }
+            }
+        }
+
+        if (filtered != null) {
+            bitmaps.add(filtered);
+        }
+        if (bitmaps.isEmpty()) {
+            return EMPTY;
+        }
+        return bitmaps.size() == 1 ? bitmaps.get(0) : FastAggregation.or(bitmaps.iterator());
+    }
+
+    // Теги, которые нужно запрашивать у Tumblr: теги подписок и ключевые теги веток фильтров
+    public Set<Integer> trackedTagIds() {
+        Set<Integer> tracked = new HashSet<>(subscribersByTag.keySet());
+        tracked.addAll(clausesByTag.keySet());
+        return tracked;
+    }
+
+    public int ordinalOf(Long chatId) {
+        Integer ordinal = ordinalByChatId.get(chatId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public long chatIdOf(int ordinal) {
+        return chatIds[ordinal];
+    }
+
+    public int[] tagIdsOf(int ordinal) {
+        return tagIdsByOrdinal[ordinal];
+    }
+
+    public int size() {
+        return chatIds.length;
+    }
+}
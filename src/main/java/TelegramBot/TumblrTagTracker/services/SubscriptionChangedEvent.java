@@ -0,0 +1,5 @@
+package TelegramBot.TumblrTagTracker.services;
+
+// Подписка пользователя изменилась на этом инстансе
+public record SubscriptionChangedEvent(Long chatId) {
+}
@@ -5,15 +5,23 @@ import TelegramBot.TumblrTagTracker.models.Subscription;
 import TelegramBot.TumblrTagTracker.repositories.SubscriptionRepository;
 import TelegramBot.TumblrTagTracker.util.DatabaseException;
 import TelegramBot.TumblrTagTracker.util.SubscriptionNotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -25,13 +33,63 @@ public class SubscriptionService {
     private static final Logger log = LoggerFactory.getLogger(SubscriptionService.class);
     private final SubscriptionRepository subscriptionRepository;
 
-    // для принудительного обновления тегов из БД
+    // Состояние подписки для команд бота. Ключ - chatID, отсутствие подписки тоже кешируется.
+    // Сбрасывается при каждом изменении, TTL ограничивает устаревание при записи с другого инстанса.
+    private final Cache<Long, CachedSubscription> subscriptionCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // для принудительного сброса изменений тегов в БД
     @PersistenceContext
     private EntityManager entityManager;
 
     @Autowired
-    public SubscriptionService(SubscriptionRepository subscriptionRepository) {
+    public SubscriptionService(SubscriptionRepository subscriptionRepository,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${subscription.cache.ttl:5m}") Duration cacheTtl,
+                               @Value("${subscription.cache.max-size:10000}") long cacheMaxSize) {
         this.subscriptionRepository = subscriptionRepository;
+        this.eventPublisher = eventPublisher;
+        this.subscriptionCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+    }
+
+    private record CachedSubscription(boolean active, Set<String> tags, Set<String> filters,
+                                      Subscription.DeliveryMode deliveryMode) {
+
+        static final CachedSubscription ABSENT =
+                new CachedSubscription(false, Set.of(), Set.of(), Subscription.DeliveryMode.INSTANT);
+
+        static CachedSubscription of(Subscription subscription) {
+            return new CachedSubscription(
+                    Boolean.TRUE.equals(subscription.getActive()),
+                    Set.copyOf(subscription.getTags()),
+                    Set.copyOf(subscription.getFilters()),
+                    subscription.isDigest() ? Subscription.DeliveryMode.DIGEST : Subscription.DeliveryMode.INSTANT);
+        }
+    }
+
+    private CachedSubscription cached(Long chatID) {
+        return subscriptionCache.get(chatID, id -> subscriptionRepository.findByChatID(id)
+                .map(CachedSubscription::of)
+                .orElse(CachedSubscription.ABSENT));
+    }
+
+    // Сбрасываем кеш сразу и ещё раз после коммита, чтобы параллельное чтение
+    // не успело закешировать состояние до фиксации транзакции. Снимок подписок
+    // получает событие и перечитывает только эту подписку.
+    private void changed(Long chatID) {
+        subscriptionCache.invalidate(chatID);
+        eventPublisher.publishEvent(new SubscriptionChangedEvent(chatID));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    subscriptionCache.invalidate(chatID);
+                }
+            });
+        }
     }
 
     public Subscription subscribe(Long chatID) {
@@ -45,10 +103,13 @@ public class SubscriptionService {
                     return sub;
                 }
                 sub.setActive(true);
+                sub.touch();
+                changed(chatID);
                 return subscriptionRepository.save(sub);
             }
 
             Subscription newSub = new Subscription(chatID);
+            changed(chatID);
             return subscriptionRepository.save(newSub);
         } catch (DataAccessException e) {
             log.error("Ошибка в базе данных при попытке подписать пользователя.");
@@ -58,9 +119,9 @@ public class SubscriptionService {
 
     public boolean unsubscribe(Long chatID) {
         try {
-            Optional<Subscription> subscription = subscriptionRepository.findByChatID(chatID);
-            if (subscription.isPresent() && Boolean.TRUE.equals(subscription.get().getActive())) {
-                subscriptionRepository.deactivateByChatID(chatID);
+            if (cached(chatID).active()) {
+                subscriptionRepository.deactivateByChatID(chatID, LocalDateTime.now());
+                changed(chatID);
                 log.info("Пользователь {} отписан!", chatID);
                 return true;
             }
@@ -74,46 +135,44 @@ public class SubscriptionService {
 
     public boolean isSubscribed(Long chatID) {
         try {
-            Optional<Subscription> subscription = subscriptionRepository.findByChatID(chatID);
-            return subscription.isPresent() && Boolean.TRUE.equals(subscription.get().getActive());
+            return cached(chatID).active();
         } catch (DataAccessException e) {
             log.error("Ошибка при попытке выяснить, подписан ли пользователь {}.", chatID);
             throw new DatabaseException("Не удалось узнать статус пользователя ввиду ошибки со стороны БД.");
         }
     }
 
+    // Неизменяемый набор тегов; для правки нужно скопировать
     @Transactional(readOnly = true)
     public Set<String> getTags(Long chatID) {
         try {
-            // Очищаем кеш EntityManager для этой сущности, если она есть
-            Optional<Subscription> cachedSub = subscriptionRepository.findByChatID(chatID);
-            if (cachedSub.isPresent()) {
-                entityManager.refresh(cachedSub.get()); // Принудительно обновляем из БД
-                log.debug("Теги для пользователя {} обновлены из БД: {}", chatID, cachedSub.get().getTags());
-                return cachedSub.get().getTags();
-            }
-            return Set.of();
-
+            return cached(chatID).tags();
         } catch (DataAccessException e) {
             log.error("Ошибка со стороны базы данных при попытке нахождения тегов для пользователя {}", chatID, e);
             return Set.of();
-
-        } catch (Exception e) {
-            log.error("Ошибка при попытке рефрешнуть теги для пользователя {}", chatID, e);
-            // Fallback: пытаемся получить без refresh
-            return getSubscription(chatID)
-                    .map(Subscription::getTags)
-                    .orElse(Set.of());
         }
     }
 
+    // Неизменяемый набор выражений в канонической форме
+    @Transactional(readOnly = true)
+    public Set<String> getFilters(Long chatID) {
+        return cached(chatID).filters();
+    }
+
+    @Transactional(readOnly = true)
+    public Subscription.DeliveryMode getDeliveryMode(Long chatID) {
+        return cached(chatID).deliveryMode();
+    }
+
     public Subscription updateTags(Long chatId, Set<String> tags) {
         try {
             Subscription subscription = getSubscription(chatId)
                     .orElseThrow(() -> new SubscriptionNotFoundException("Подписка не найдена, сначала подпишитесь (/subscribe)."));
             subscription.setTags(tags);
+            subscription.touch();
             Subscription saved = subscriptionRepository.save(subscription);
             entityManager.flush(); // Принудительно сбрасываем изменения в БД
+            changed(chatId);
             log.info("Теги пользователя {} обновлены: {}", chatId, tags);
             return saved;
 
@@ -125,6 +184,39 @@ public class SubscriptionService {
         }
     }
 
+    public Subscription updateFilters(Long chatId, Set<String> filters) {
+        try {
+            Subscription subscription = getSubscription(chatId)
+                    .orElseThrow(() -> new SubscriptionNotFoundException("Подписка не найдена, сначала подпишитесь (/subscribe)."));
+            subscription.setFilters(filters);
+            subscription.touch();
+            Subscription saved = subscriptionRepository.save(subscription);
+            changed(chatId);
+            log.info("Фильтры пользователя {} обновлены: {}", chatId, filters);
+            return saved;
+
+        } catch (DataAccessException e) {
+            log.error("Ошибка со стороны БД при попытке обновить фильтры пользователя {}", chatId, e);
+            throw new DatabaseException("Не удалось обновить фильтры. Попробуйте позже.");
+        }
+    }
+
+    public Subscription updateDeliveryMode(Long chatId, Subscription.DeliveryMode mode) {
+        try {
+            Subscription subscription = getSubscription(chatId)
+                    .orElseThrow(() -> new SubscriptionNotFoundException("Подписка не найдена, сначала подпишитесь (/subscribe)."));
+            subscription.setDeliveryMode(mode);
+            subscription.touch();
+            Subscription saved = subscriptionRepository.save(subscription);
+            changed(chatId);
+            log.info("Режим доставки пользователя {} изменён на {}", chatId, mode);
+            return saved;
+
+        } catch (DataAccessException e) {
+            log.error("Ошибка со стороны БД при попытке сменить режим доставки пользователя {}", chatId, e);
+            throw new DatabaseException("Не удалось сменить режим доставки. Попробуйте позже.");
+        }
+    }
 
     public Optional<Subscription> getSubscription(Long chatId) {
         return subscriptionRepository.findByChatID(chatId);
@@ -0,0 +1,188 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.models.Subscription;
+import TelegramBot.TumblrTagTracker.repositories.SubscriptionRepository;
+import TelegramBot.TumblrTagTracker.schedulers.JobRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Версионированный снимок активных подписок в памяти. Загружается целиком один раз,
+// дальше обновляется по событиям SubscriptionService и догоняет правки других инстансов
+// по updated_at. Индекс подписчиков пересобирается только при смене версии.
+@Service
+public class SubscriptionSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionSnapshot.class);
+
+    public record ActiveSubscription(Long chatId, Set<String> tags, Set<String> filters, boolean digest) {
+
+        static ActiveSubscription of(Subscription subscription) {
+            return new ActiveSubscription(
+                    subscription.getChatID(),
+                    Set.copyOf(subscription.getTags()),
+                    Set.copyOf(subscription.getFilters()),
+                    subscription.isDigest());
+        }
+    }
+
+    private record State(long version, Map<Long, ActiveSubscription> subscriptions) {
+    }
+
+    private record IndexHolder(long version, SubscriberIndex index) {
+    }
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final TagDictionary tagDictionary;
+    private final JobRunner jobRunner;
+    // Запас на расхождение часов инстансов: повторное применение правки безвредно
+    private final Duration clockSkew;
+
+    private volatile State state;
+    private volatile IndexHolder indexHolder;
+    // Отметка догоняющего чтения: двигается только по его результатам, иначе локальная правка
+    // могла бы перескочить ещё не прочитанные правки других инстансов
+    private LocalDateTime watermark;
+    // updated_at применённой версии каждой подписки, включая отписавшихся:
+    // догоняющее чтение идёт без блокировки и не должно затирать более свежую локальную правку
+    private final Map<Long, LocalDateTime> appliedUpdatedAt = new HashMap<>();
+
+    @Autowired
+    public SubscriptionSnapshot(SubscriptionRepository subscriptionRepository, TagDictionary tagDictionary,
+                                JobRunner jobRunner,
+                                @Value("${subscription.snapshot.clock-skew:30s}") Duration clockSkew) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.tagDictionary = tagDictionary;
+        this.jobRunner = jobRunner;
+        this.clockSkew = clockSkew;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        ensureLoaded();
+    }
+
+    public Collection<ActiveSubscription> subscriptions() {
+        return ensureLoaded().subscriptions().values();
+    }
+
+    public boolean isDigest(Long chatId) {
+        ActiveSubscription subscription = ensureLoaded().subscriptions().get(chatId);
+        return subscription != null && subscription.digest();
+    }
+
+    public SubscriberIndex subscriberIndex() {
+        State current = ensureLoaded();
+        IndexHolder holder = indexHolder;
+        if (holder == null || holder.version() != current.version()) {
+            holder = new IndexHolder(current.version(),
+                    SubscriberIndex.build(current.subscriptions().values(), tagDictionary));
+            indexHolder = holder;
+            log.debug("Индекс подписчиков пересобран для версии {}", current.version());
+        }
+        return holder.index();
+    }
+
+    // Правка на этом инстансе - перечитываем одну подписку после коммита
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSubscriptionChanged(SubscriptionChangedEvent event) {
+        if (state == null) {
+            return; // полная загрузка ещё впереди и увидит правку
+        }
+        Optional<Subscription> subscription = subscriptionRepository.findByChatID(event.chatId());
+        apply(subscription.map(List::of).orElse(List.of()), Set.of(event.chatId()), false);
+    }
+
+    // Правки других инстансов: только строки, изменённые после последней отметки
+    @Scheduled(fixedDelayString = "${subscription.snapshot.catch-up.ms:60000}", scheduler = "pollingScheduler")
+    public void catchUp() {
+        jobRunner.run("subscription-catch-up", this::doCatchUp);
+    }
+
+    private void doCatchUp() {
+        if (state == null) {
+            return;
+        }
+        LocalDateTime since;
+        synchronized (this) {
+            since = watermark.minus(clockSkew);
+        }
+        List<Subscription> changed = subscriptionRepository.findChangedSince(since);
+        if (!changed.isEmpty()) {
+            apply(changed, Set.of(), true);
+        }
+    }
+
+    private State ensureLoaded() {
+        State current = state;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (state == null) {
+                LocalDateTime loadStartedAt = LocalDateTime.now();
+                Map<Long, ActiveSubscription> subscriptions = new HashMap<>();
+                for (Subscription subscription : subscriptionRepository.findByIsActiveTrueWithTags()) {
+                    subscriptions.put(subscription.getChatID(), ActiveSubscription.of(subscription));
+                    if (subscription.getUpdatedAt() != null) {
+                        appliedUpdatedAt.put(subscription.getChatID(), subscription.getUpdatedAt());
+                    }
+                }
+                watermark = loadStartedAt;
+                state = new State(1, Collections.unmodifiableMap(subscriptions));
+                log.info("Снимок подписок загружен: {} активных подписчиков", subscriptions.size());
+            }
+            return state;
+        }
+    }
+
+    // Копирование при записи: читатели всегда видят целостную версию
+    private synchronized void apply(List<Subscription> changed, Set<Long> removedIfAbsent, boolean advanceWatermark) {
+        Map<Long, ActiveSubscription> subscriptions = new HashMap<>(state.subscriptions());
+        boolean modified = false;
+
+        for (Long chatId : removedIfAbsent) {
+            if (changed.stream().noneMatch(s -> chatId.equals(s.getChatID()))) {
+                modified |= subscriptions.remove(chatId) != null;
+            }
+        }
+
+        for (Subscription subscription : changed) {
+            LocalDateTime updatedAt = subscription.getUpdatedAt();
+            if (advanceWatermark && updatedAt != null && updatedAt.isAfter(watermark)) {
+                watermark = updatedAt;
+            }
+
+            LocalDateTime applied = appliedUpdatedAt.get(subscription.getChatID());
+            if (updatedAt != null && applied != null && updatedAt.isBefore(applied)) {
+                continue; // уже применена более свежая версия
+            }
+            if (updatedAt != null) {
+                appliedUpdatedAt.put(subscription.getChatID(), updatedAt);
+            }
+
+            if (Boolean.TRUE.equals(subscription.getActive())) {
+                ActiveSubscription fresh = ActiveSubscription.of(subscription);
+                modified |= !fresh.equals(subscriptions.put(subscription.getChatID(), fresh));
+            } else {
+                modified |= subscriptions.remove(subscription.getChatID()) != null;
+            }
+        }
+
+        if (modified) {
+            state = new State(state.version() + 1, Collections.unmodifiableMap(subscriptions));
+            log.debug("Снимок подписок обновлён до версии {} ({} изменений)", state.version(), changed.size());
+        }
+    }
+}
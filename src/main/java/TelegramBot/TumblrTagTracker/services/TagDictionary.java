@@ -0,0 +1,197 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.models.Tag;
+import TelegramBot.TumblrTagTracker.repositories.TagRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Двусторонний словарь тег <-> int id поверх таблицы tags.
+// Строки тегов хранятся в одном экземпляре, сравнение и пересечение идут по отсортированным int[].
+@Service
+public class TagDictionary {
+
+    private static final Logger log = LoggerFactory.getLogger(TagDictionary.class);
+    private static final int[] NO_TAGS = new int[0];
+
+    private final TagRepository tagRepository;
+    // Новые теги пишем в отдельной транзакции: id не должен пропасть при откате вызывающей
+    private final TransactionTemplate insertTransaction;
+
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private final Map<Integer, String> namesById = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TagDictionary(TagRepository tagRepository, PlatformTransactionManager transactionManager) {
+        this.tagRepository = tagRepository;
+        this.insertTransaction = new TransactionTemplate(transactionManager);
+        this.insertTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int idOf(String name) {
+        Integer id = idsByName.get(name);
+        return id != null ? id : idsOf(List.of(name))[0];
+    }
+
+    // Отсортированные уникальные id; отсутствующие в словаре теги создаются одним запросом
+    public int[] idsOf(Collection<String> names) {
+        if (names == null || names.isEmpty()) {
+            return NO_TAGS;
+        }
+
+        Set<String> missing = null;
+        for (String name : names) {
+            if (name != null && !name.isBlank() && !idsByName.containsKey(name)) {
+                if (missing == null) {
+                    missing = new HashSet<>();
+                }
+                missing.add(name);
+            }
+        }
+        if (missing != null) {
+            load(missing);
+        }
+
+        return names.stream()
+                .filter(name -> name != null && !name.isBlank())
+                .mapToInt(idsByName::get)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    // Только поиск, без записи в таблицу: для тегов из постов. В словаре лежат теги подписок
+    // и фильтров, а незнакомый тег всё равно не совпадёт ни с одним подписчиком.
+    public Integer idIfKnown(String name) {
+        return name != null ? idsByName.get(name) : null;
+    }
+
+    // Отсортированные уникальные id известных тегов; незнакомые отбрасываются
+    public int[] idsIfKnown(Collection<String> names) {
+        if (names == null || names.isEmpty()) {
+            return NO_TAGS;
+        }
+        return names.stream()
+                .map(this::idIfKnown)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    public String nameOf(int id) {
+        String name = namesById.get(id);
+        if (name == null) {
+            name = tagRepository.findById(id).map(this::remember).orElse(null);
+        }
+        return name;
+    }
+
+    public List<String> namesOf(int[] ids) {
+        if (ids == null || ids.length == 0) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            String name = nameOf(id);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    public int size() {
+        return idsByName.size();
+    }
+
+    // Пересечение двух отсортированных массивов id
+    public static int[] intersect(int[] a, int[] b) {
+        if (a == null || b == null || a.length == 0 || b.length == 0) {
+            return NO_TAGS;
+        }
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    // Объединение двух отсортированных массивов id
+    public static int[] union(int[] a, int[] b) {
+        if (a == null || a.length == 0) {
+            return b != null ? b : NO_TAGS;
+        }
+        if (b == null || b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i == a.length || a[i] > b[j]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private void load(Set<String> names) {
+        tagRepository.findByNameIn(names).forEach(this::remember);
+
+        List<String> unknown = names.stream().filter(name -> !idsByName.containsKey(name)).toList();
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        try {
+            insertTransaction.executeWithoutResult(status ->
+                    tagRepository.saveAll(unknown.stream().map(Tag::new).toList()).forEach(this::remember));
+            log.debug("В словарь добавлено {} новых тегов", unknown.size());
+        } catch (DataIntegrityViolationException e) {
+            // Тот же тег параллельно добавил другой инстанс - добавляем по одному
+            for (String name : unknown) {
+                insertOne(name);
+            }
+        }
+    }
+
+    private void insertOne(String name) {
+        try {
+            insertTransaction.executeWithoutResult(status -> remember(tagRepository.save(new Tag(name))));
+        } catch (DataIntegrityViolationException e) {
+            tagRepository.findByName(name).map(this::remember)
+                    .orElseThrow(() -> new IllegalStateException("Не удалось добавить тег в словарь: " + name, e));
+        }
+    }
+
+    private String remember(Tag tag) {
+        String name = tag.getName();
+        idsByName.putIfAbsent(name, tag.getId());
+        namesById.putIfAbsent(tag.getId(), name);
+        return namesById.get(tag.getId());
+    }
+}
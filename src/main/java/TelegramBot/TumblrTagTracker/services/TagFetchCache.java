@@ -0,0 +1,121 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.util.PostJsonCodec;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// Короткоживущий кэш ответов API по тегам. Повторная проверка метрик и проверка новых постов
+// читают одни и те же теги с разницей в минуты - второй запрос берётся из кэша, не тратя лимит.
+// Одновременные запросы одного тега ждут один общий вызов API.
+@Service
+public class TagFetchCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TagFetchCache.class);
+    private static final String PREFIX_TAG_POSTS = "tag_posts:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final PostJsonCodec postJsonCodec;
+    private final Cache<String, CompletableFuture<List<TumblrPostDTO>>> postsByTag;
+    private final Duration ttl;
+    private final boolean redisEnabled;
+
+    @Autowired
+    public TagFetchCache(RedisTemplate<String, String> redisTemplate, PostJsonCodec postJsonCodec,
+                         @Value("${tumblr.fetch-cache.ttl:4m}") Duration ttl,
+                         @Value("${tumblr.fetch-cache.max-size:1000}") long maxSize,
+                         @Value("${tumblr.fetch-cache.redis.enabled:false}") boolean redisEnabled) {
+        this.redisTemplate = redisTemplate;
+        this.postJsonCodec = postJsonCodec;
+        this.ttl = ttl;
+        this.redisEnabled = redisEnabled;
+        this.postsByTag = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    // Посты тега из кэша или, если их там нет, через fetcher. Ошибки не кэшируются.
+    // Здоровье тега fetcher отмечает сам: ждущие получают исключение ведущего, но не должны
+    // засчитывать его ещё раз.
+    public List<TumblrPostDTO> get(String tag, Function<String, List<TumblrPostDTO>> fetcher) {
+        CompletableFuture<List<TumblrPostDTO>> mine = new CompletableFuture<>();
+        CompletableFuture<List<TumblrPostDTO>> existing = postsByTag.asMap().putIfAbsent(tag, mine);
+
+        if (existing != null) {
+            log.debug("Посты по тегу '{}' взяты из кэша запросов", tag);
+            return join(existing);
+        }
+
+        try {
+            List<TumblrPostDTO> posts = readShared(tag);
+            if (posts == null) {
+                posts = List.copyOf(fetcher.apply(tag));
+                writeShared(tag, posts);
+            }
+            mine.complete(posts);
+            return posts;
+        } catch (Throwable e) {
+            // Любое исключение, включая Error, должно разбудить ждущих, иначе они повиснут навсегда
+            postsByTag.asMap().remove(tag, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private List<TumblrPostDTO> readShared(String tag) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(PREFIX_TAG_POSTS + tag);
+            if (json == null) {
+                return null;
+            }
+            log.debug("Посты по тегу '{}' взяты из общего кэша Redis", tag);
+            return List.copyOf(postJsonCodec.decodeAll(json));
+        } catch (Exception e) {
+            log.warn("Не удалось прочитать кэш тега '{}' из Redis, идём в API", tag, e);
+            return null;
+        }
+    }
+
+    private void writeShared(String tag, List<TumblrPostDTO> posts) {
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(PREFIX_TAG_POSTS + tag, postJsonCodec.encodeAll(posts), ttl);
+        } catch (Exception e) {
+            log.warn("Не удалось записать кэш тега '{}' в Redis", tag, e);
+        }
+    }
+
+    // Ждущий получает то же исключение, что и тот, кто ходил в API
+    private static List<TumblrPostDTO> join(CompletableFuture<List<TumblrPostDTO>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
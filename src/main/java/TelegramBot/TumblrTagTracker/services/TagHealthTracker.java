@@ -0,0 +1,146 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Здоровье тегов: считает ошибки и пустые ответы подряд и отправляет проблемные теги
+// в карантин с экспоненциальным backoff, чтобы они не тратили лимит запросов каждый цикл.
+@Service
+public class TagHealthTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(TagHealthTracker.class);
+
+    private final int failureThreshold;
+    private final int emptyStreakThreshold;
+    private final Duration baseQuarantine;
+    private final Duration maxQuarantine;
+
+    private final Map<String, TagHealth> healthByTag = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TagHealthTracker(@Value("${tumblr.tag-health.failure-threshold:3}") int failureThreshold,
+                            @Value("${tumblr.tag-health.empty-streak-threshold:6}") int emptyStreakThreshold,
+                            @Value("${tumblr.tag-health.base-quarantine:15m}") Duration baseQuarantine,
+                            @Value("${tumblr.tag-health.max-quarantine:24h}") Duration maxQuarantine) {
+        this.failureThreshold = failureThreshold;
+        this.emptyStreakThreshold = emptyStreakThreshold;
+        this.baseQuarantine = baseQuarantine;
+        this.maxQuarantine = maxQuarantine;
+    }
+
+    // Теги, которые можно запрашивать сейчас: без карантина, давно не проверявшиеся - первыми,
+    // чтобы при нехватке лимита в следующем цикле очередь доходила до остальных
+    public List<String> fetchOrder(Collection<String> tags) {
+        Instant now = Instant.now();
+        List<String> available = new ArrayList<>(tags.size());
+
+        for (String tag : tags) {
+            TagHealth health = healthByTag.get(tag);
+            if (health == null || !health.isQuarantined(now)) {
+                available.add(tag);
+            }
+        }
+
+        available.sort(Comparator.comparing(tag -> {
+            TagHealth health = healthByTag.get(tag);
+            return health != null ? health.lastFetchAt : Instant.EPOCH;
+        }));
+        return available;
+    }
+
+    // newestTimestamp - время самого свежего поста ответа в секундах (0 - неизвестно)
+    public void recordSuccess(String tag, int postsCount, long newestTimestamp) {
+        TagHealth health = healthByTag.computeIfAbsent(tag, t -> new TagHealth());
+        synchronized (health) {
+            health.lastFetchAt = Instant.now();
+            health.consecutiveFailures = 0;
+            if (newestTimestamp > 0 && (health.cursor == null || newestTimestamp > health.cursor.getEpochSecond())) {
+                health.cursor = Instant.ofEpochSecond(newestTimestamp);
+            }
+
+            if (postsCount > 0) {
+                health.emptyStreak = 0;
+                health.quarantineLevel = 0;
+                return;
+            }
+
+            health.emptyStreak++;
+            if (health.emptyStreak >= emptyStreakThreshold) {
+                quarantine(tag, health, "пустые ответы " + health.emptyStreak + " раз подряд");
+                health.emptyStreak = 0;
+            }
+        }
+    }
+
+    public void recordFailure(String tag, Exception e) {
+        TagHealth health = healthByTag.computeIfAbsent(tag, t -> new TagHealth());
+        synchronized (health) {
+            health.lastFetchAt = Instant.now();
+            health.consecutiveFailures++;
+
+            if (health.consecutiveFailures >= failureThreshold) {
+                quarantine(tag, health, "ошибки " + health.consecutiveFailures + " раз подряд: " + e.getMessage());
+                health.consecutiveFailures = 0;
+            }
+        }
+    }
+
+    // Состояние тегов для админского API: lag - сколько прошло с последнего запроса тега,
+    // cursor - самый свежий пост, который по нему приходил
+    public List<TagStatus> snapshot() {
+        Instant now = Instant.now();
+        List<TagStatus> statuses = new ArrayList<>(healthByTag.size());
+        healthByTag.forEach((tag, health) -> {
+            synchronized (health) {
+                statuses.add(new TagStatus(tag, health.lastFetchAt, Duration.between(health.lastFetchAt, now),
+                        health.cursor, health.isQuarantined(now) ? health.quarantinedUntil : null,
+                        health.consecutiveFailures, health.emptyStreak));
+            }
+        });
+        statuses.sort(Comparator.comparing(TagStatus::lag).reversed());
+        return statuses;
+    }
+
+    public record TagStatus(String tag, Instant lastFetchAt, Duration lag, Instant cursor, Instant quarantinedUntil,
+                            int consecutiveFailures, int emptyStreak) {
+    }
+
+    // Забываем теги, на которые больше никто не подписан
+    public void retainOnly(Set<String> activeTags) {
+        healthByTag.keySet().retainAll(activeTags);
+    }
+
+    private void quarantine(String tag, TagHealth health, String reason) {
+        long multiplier = 1L << Math.min(health.quarantineLevel, 20);
+        Duration duration = baseQuarantine.multipliedBy(multiplier);
+        if (duration.compareTo(maxQuarantine) > 0) {
+            duration = maxQuarantine;
+        }
+
+        health.quarantinedUntil = Instant.now().plus(duration);
+        health.quarantineLevel++;
+
+        log.warn("Тег '{}' отправлен в карантин на {} мин ({})", tag, duration.toMinutes(), reason);
+    }
+
+    private static class TagHealth {
+        int consecutiveFailures;
+        int emptyStreak;
+        int quarantineLevel;
+        volatile Instant quarantinedUntil;
+        volatile Instant lastFetchAt = Instant.EPOCH;
+        Instant cursor;
+
+        boolean isQuarantined(Instant now) {
+            return quarantinedUntil != null && now.isBefore(quarantinedUntil);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.clients.TaggedPostsClient;
+import TelegramBot.TumblrTagTracker.util.TumblrUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+// Пул клиентов Tumblr API: по клиенту на каждый настроенный ключ.
+// У каждого ключа свой бакет rate limit и свой circuit breaker,
+// запрос уходит ключу с наибольшим последним известным остатком лимита.
+public class TumblrClientPool {
+
+    private static final Logger log = LoggerFactory.getLogger(TumblrClientPool.class);
+
+    private final List<PooledClient> clients;
+    private final TumblrRateLimiterService rateLimiter;
+
+    public TumblrClientPool(List<PooledClient> clients, TumblrRateLimiterService rateLimiter) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("Не настроено ни одного ключа Tumblr API");
+        }
+        this.clients = List.copyOf(clients);
+        this.rateLimiter = rateLimiter;
+    }
+
+    public <T> T execute(Function<TaggedPostsClient, T> call) {
+        // Порядок - по остаткам, увиденным при прошлых запросах, без отдельного запроса в Redis
+        // на каждый ключ. Ключи, к которым ещё не обращались, пробуем первыми.
+        List<ClientBudget> candidates = new ArrayList<>();
+        for (PooledClient client : clients) {
+            if (client.circuitBreaker().getState() == CircuitBreaker.State.OPEN) {
+                continue;
+            }
+            Integer lastSeen = rateLimiter.lastSeenPermits(client.bucket());
+            candidates.add(new ClientBudget(client, lastSeen != null ? lastSeen : Integer.MAX_VALUE));
+        }
+
+        if (candidates.isEmpty()) {
+            throw new TumblrUnavailableException("Все ключи Tumblr API временно недоступны");
+        }
+
+        candidates.sort(Comparator.comparingInt(ClientBudget::remaining).reversed());
+
+        // Отказ ключа обновляет его остаток, так что следующий запрос начнёт с другого
+        for (ClientBudget candidate : candidates) {
+            if (rateLimiter.tryAcquire(candidate.client().bucket())) {
+                return callThrough(candidate.client(), call);
+            }
+        }
+
+        // Лимит исчерпан у всех ключей - ждём токен у того, что пополнится первым
+        PooledClient best = candidates.getFirst().client();
+        rateLimiter.waitForRateLimit(best.bucket());
+        return callThrough(best, call);
+    }
+
+    // Суммарный остаток лимита по доступным ключам - по последним известным остаткам,
+    // без запросов в Redis. Ключи, к которым инстанс ещё не обращался, не учитываются.
+    public int getLastSeenPermits() {
+        int total = 0;
+        for (PooledClient client : clients) {
+            Integer remaining = rateLimiter.lastSeenPermits(client.bucket());
+            if (remaining != null && client.circuitBreaker().getState() != CircuitBreaker.State.OPEN) {
+                total += remaining;
+            }
+        }
+        return total;
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    private <T> T callThrough(PooledClient client, Function<TaggedPostsClient, T> call) {
+        log.debug("Запрос к Tumblr API через ключ {}", client.name());
+        return client.circuitBreaker().executeSupplier(() -> call.apply(client.client()));
+    }
+
+    public record PooledClient(String name, String bucket, TaggedPostsClient client, CircuitBreaker circuitBreaker) {
+    }
+
+    private record ClientBudget(PooledClient client, int remaining) {
+    }
+}
@@ -4,52 +4,134 @@ import TelegramBot.TumblrTagTracker.util.RateLimitExceededException;
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterConfig;
 import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Лимит запросов к Tumblr API общий для всех инстансов: token bucket живёт в Redis
+// и атомарно обновляется Lua-скриптом. Один вызов API = один токен.
+// У каждого ключа API свой бакет.
 @Service
 public class TumblrRateLimiterService {
 
     private static final Logger log = LoggerFactory.getLogger(TumblrRateLimiterService.class);
+    private static final String PREFIX_BUCKET = "rate_limit:";
 
-    private final RateLimiter rateLimiter;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisScript<List<Long>> tokenBucketScript;
+    private final int permitsPerPeriod;
+    private final Duration period;
+    private final Duration timeout;
+
+    // Локальный лимитер используется, только если Redis недоступен
+    private final RateLimiterRegistry localRateLimiters;
+
+    // Остаток бакета из последнего ответа скрипта - для статистики без похода в Redis
+    private final Map<String, Integer> lastSeenRemaining = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TumblrRateLimiterService(RedisTemplate<String, String> redisTemplate,
+                                    @Value("${tumblr.rate-limit.permits:20}") int permitsPerPeriod,
+                                    @Value("${tumblr.rate-limit.period:60s}") Duration period,
+                                    @Value("${tumblr.rate-limit.timeout:30s}") Duration timeout) {
+        this.redisTemplate = redisTemplate;
+        this.permitsPerPeriod = permitsPerPeriod;
+        this.period = period;
+        this.timeout = timeout;
+        this.tokenBucketScript = loadScript();
 
-    public TumblrRateLimiterService() {
         RateLimiterConfig config = RateLimiterConfig.custom()
-                .limitForPeriod(20) // 20 запросов
-                .limitRefreshPeriod(Duration.ofMinutes(1)) // за 1 минуту
-                .timeoutDuration(Duration.ofSeconds(30)) // максимальное ожидание токена
+                .limitForPeriod(permitsPerPeriod)
+                .limitRefreshPeriod(period)
+                .timeoutDuration(Duration.ZERO)
                 .build();
+        this.localRateLimiters = RateLimiterRegistry.of(config);
+    }
+
+    // Блокирует поток, пока не будет получен токен, но не дольше timeout
+    public void waitForRateLimit(String bucket) {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
 
-        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(config);
-        this.rateLimiter = rateLimiterRegistry.rateLimiter("tumblr-api");
+        while (true) {
+            BucketState state = acquire(bucket, 1);
+            if (state.acquired()) {
+                log.debug("Токен {} получен. Доступно: {}", bucket, state.remaining());
+                return;
+            }
 
-        rateLimiter.getEventPublisher().onSuccess(event -> log.debug("Токен получен. Доступно: {}",
-                rateLimiter.getMetrics().getAvailablePermissions())).onFailure(event ->
-                log.error("Не удалось получить токен."));
+            long sleepMs = Math.max(state.waitMs(), 50);
+            if (System.currentTimeMillis() + sleepMs > deadline) {
+                log.warn("Превышен лимит запросов для {} ({} за {}s)", bucket, permitsPerPeriod, period.toSeconds());
+                throw new RateLimitExceededException("Превышен лимит запросов к Tumblr API");
+            }
+
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RateLimitExceededException("Ожидание токена прервано");
+            }
+        }
     }
 
-    public void waitForRateLimit() {
+    public boolean tryAcquire(String bucket) {
+        return acquire(bucket, 1).acquired();
+    }
+
+    // Остаток, который видел этот инстанс при последнем обращении к бакету; null - ещё не обращались
+    public Integer lastSeenPermits(String bucket) {
+        return lastSeenRemaining.get(bucket);
+    }
+
+    private BucketState acquire(String bucket, int permits) {
+        BucketState state = acquireShared(bucket, permits);
+        lastSeenRemaining.put(bucket, state.remaining());
+        return state;
+    }
+
+    private BucketState acquireShared(String bucket, int permits) {
         try {
-            boolean acquired = rateLimiter.acquirePermission();
-            if (!acquired) {
-                throw new RateLimitExceededException("Rate limit превышен");
+            List<Long> result = redisTemplate.execute(tokenBucketScript, List.of(PREFIX_BUCKET + bucket),
+                    String.valueOf(permitsPerPeriod), String.valueOf(period.toMillis()), String.valueOf(permits));
+
+            if (result == null || result.size() < 3) {
+                throw new IllegalStateException("Неожиданный ответ token bucket скрипта: " + result);
             }
+            return new BucketState(result.get(0) == 1L, result.get(1).intValue(), result.get(2));
 
-        } catch (RequestNotPermitted e) {
-            log.error("Превышен лимит запросов (20/минуту)");
-            throw new RateLimitExceededException("Превышен лимит запросов к Tumblr API");
-        } catch (Exception e) {
-            log.error("Ошибка при ожидании rate limit", e);
-            throw new RuntimeException("Rate limiter error", e);
+        } catch (DataAccessException | IllegalStateException e) {
+            log.warn("Redis недоступен для rate limit, используем локальный лимитер: {}", e.getMessage());
+            return acquireLocally(bucket, permits);
         }
     }
 
-    public boolean tryAcquire() {
-        return rateLimiter.acquirePermission();
+    private BucketState acquireLocally(String bucket, int permits) {
+        RateLimiter limiter = localRateLimiters.rateLimiter(bucket);
+        boolean acquired = limiter.acquirePermission(permits);
+        int remaining = Math.max(0, limiter.getMetrics().getAvailablePermissions());
+        return new BucketState(acquired, remaining, acquired ? 0 : period.toMillis() / permitsPerPeriod);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Long>> loadScript() {
+        DefaultRedisScript<List<Long>> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("scripts/token_bucket.lua"));
+        script.setResultType((Class<List<Long>>) (Class<?>) List.class);
+        return script;
+    }
+
+    private record BucketState(boolean acquired, int remaining, long waitMs) {
     }
 }
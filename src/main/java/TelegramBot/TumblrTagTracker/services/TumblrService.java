@@ -1,256 +1,233 @@
 package TelegramBot.TumblrTagTracker.services;
 
 import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
-import TelegramBot.TumblrTagTracker.util.ContentExtractor;
-import com.tumblr.jumblr.JumblrClient;
-import com.tumblr.jumblr.types.*;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import TelegramBot.TumblrTagTracker.monitoring.TagFetchEvent;
+import TelegramBot.TumblrTagTracker.util.CycleLog;
+import TelegramBot.TumblrTagTracker.util.LogSampler;
+import TelegramBot.TumblrTagTracker.util.PostFingerprint;
+import TelegramBot.TumblrTagTracker.util.RateLimitExceededException;
+import TelegramBot.TumblrTagTracker.util.TumblrApiException;
+import TelegramBot.TumblrTagTracker.util.TumblrUnavailableException;
+import com.tumblr.jumblr.exceptions.JumblrException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Service
 public class TumblrService {
 
     private final Logger log = LoggerFactory.getLogger(TumblrService.class);
 
-    private final JumblrClient tumblrClient;
-    private final TumblrRateLimiterService rateLimiter;
-    private final ContentExtractor contentExtractor;
+    private static final int FETCH_LIMIT = 20;
+
+    // Предупреждения по отдельным тегам: при сотнях тегов пишем только первые в минуту
+    private final LogSampler tagWarnings = new LogSampler(10, Duration.ofMinutes(1));
+
+    private final TumblrClientPool tumblrClientPool;
     private final PostTrackingService postTrackingService;
+    private final TagHealthTracker tagHealthTracker;
+    private final FingerprintIndex fingerprintIndex;
+    private final TagFetchCache tagFetchCache;
 
     @Autowired
-    public TumblrService(JumblrClient tumblrClient, TumblrRateLimiterService rateLimiter, PostTrackingService postTrackingService,
-                         ContentExtractor contentExtractor) {
-        this.tumblrClient = tumblrClient;
-        this.rateLimiter = rateLimiter;
-        this.contentExtractor = contentExtractor;
+    public TumblrService(TumblrClientPool tumblrClientPool, PostTrackingService postTrackingService,
+                         TagHealthTracker tagHealthTracker, FingerprintIndex fingerprintIndex,
+                         TagFetchCache tagFetchCache) {
+        this.tumblrClientPool = tumblrClientPool;
         this.postTrackingService = postTrackingService;
+        this.tagHealthTracker = tagHealthTracker;
+        this.fingerprintIndex = fingerprintIndex;
+        this.tagFetchCache = tagFetchCache;
     }
 
-    public List<TumblrPostDTO> getNewPostsByTags(Set<String> tags) {
+    // Посты одного тега - единица работы конвейера
+    public record TagBatch(String tag, List<TumblrPostDTO> posts) {
+    }
+
+    // Запрашивает теги по очереди и отдаёт посты каждого тега сразу, не дожидаясь остальных
+    public int fetchByTags(Set<String> tags, Consumer<TagBatch> sink) {
 
         if (tags == null || tags.isEmpty()) {
             log.debug("Теги не указаны.");
-            return Collections.emptyList();
+            return 0;
         }
 
-        log.info("=== НАЧАЛО СБОРА ПОСТОВ ПО ТЕГАМ ===");
-        log.info("Всего тегов для проверки: {}", tags.size());
-        log.info("Теги: {}", tags);
+        // Построчный лог по тегам - только на DEBUG, на INFO остаются итоги цикла (CycleLog)
+        if (log.isDebugEnabled()) {
+            log.debug("Всего тегов для проверки: {}, теги: {}", tags.size(), tags);
+        }
 
-        Map<String, TumblrPostDTO> allPostsMap = new ConcurrentHashMap<>();
+        // Теги в карантине пропускаем, чтобы они не тратили лимит запросов
+        List<String> tagsToFetch = tagHealthTracker.fetchOrder(tags);
+        CycleLog.count("tags.quarantined", tags.size() - tagsToFetch.size());
 
         int totalPostsFromApi = 0;
-        int passedFilters = 0;
-        int failedFilters = 0;
         int tagIndex = 0;
 
-        for (String tag : tags) {
+        for (String tag : tagsToFetch) {
             tagIndex++;
             try {
-                log.info("→ [{}/{}] Проверяем тег: '{}'", tagIndex, tags.size(), tag);
-
-                if (!rateLimiter.tryAcquire()) {
-                    log.warn("Достигнут лимит запросов, прерываем сбор постов");
-                    break;
-                }
-
-                List<TumblrPostDTO> postsForTag = getPostsByTag(tag);
+                // Свежий ответ по этому тегу мог уже получить другой цикл - тогда запрос к API не нужен
+                List<TumblrPostDTO> postsForTag = tagFetchCache.get(tag, this::getPostsByTag);
                 int postsCount = postsForTag.size();
                 totalPostsFromApi += postsCount;
+                CycleLog.increment("tags.fetched");
 
-                log.info("API вернул {} постов по тегу '{}'", postsCount, tag);
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}/{}] API вернул {} постов по тегу '{}'", tagIndex, tagsToFetch.size(), postsCount, tag);
+                }
 
                 if (postsForTag.isEmpty()) {
-                    log.warn("По тегу '{}' не найдено постов!", tag);
-                    break;
+                    CycleLog.increment("tags.empty");
+                    continue;
                 }
 
-                // Логируем каждый пост
-                int accepted = 0;
-                int rejected = 0;
-
-                for (TumblrPostDTO post : postsForTag) {
+                sink.accept(new TagBatch(tag, postsForTag));
 
-                    if (postTrackingService.shouldSendPostNow(post)) {
-                        allPostsMap.putIfAbsent(post.getId(), post);
-                        accepted++;
-                        passedFilters++;
-                    } else {
-                        rejected++;
-                        failedFilters++;
-                    }
+            } catch (RateLimitExceededException e) {
+                log.warn("Достигнут лимит запросов, оставшиеся теги будут проверены в следующем цикле");
+                break;
+            } catch (TumblrUnavailableException e) {
+                log.warn("{}, оставшиеся теги будут проверены в следующем цикле", e.getMessage());
+                break;
+            } catch (CallNotPermittedException e) {
+                // Ключ API ушёл в open между выбором и вызовом - тег тут ни при чём
+                CycleLog.increment("tags.rejected");
+                if (tagWarnings.sample()) {
+                    log.warn("Запрос по тегу '{}' отклонён circuit breaker'ом ключа", tag);
                 }
-
-                log.info("  Результат по тегу '{}': принято = {}, отклонено={}", tag, accepted, rejected);
-
             } catch (Exception e) {
-                log.error("Ошибка при получении постов по тегу '{}'", tag, e);
+                if (isServiceFailure(e)) {
+                    // Сбой сети или Tumblr (5xx) - как TumblrUnavailableException: теги не штрафуем
+                    CycleLog.increment("tags.unavailable");
+                    log.warn("Tumblr API не отвечает ({}), оставшиеся теги будут проверены в следующем цикле",
+                            e.getMessage());
+                    break;
+                }
+                CycleLog.increment("tags.failed");
+                if (tagWarnings.sample()) {
+                    log.error("Ошибка при получении постов по тегу '{}'", tag, e);
+                }
             }
         }
 
-        List<TumblrPostDTO> newPosts = new ArrayList<>(allPostsMap.values());
-
-        log.info("=== ИТОГИ СБОРА ПОСТОВ ===");
-        log.info("Всего постов от API: {}", totalPostsFromApi);
-        log.info("Прошли фильтры: {}", passedFilters);
-        log.info("Не прошли фильтры: {}", failedFilters);
-        log.info("Уникальных постов для отправки: {}", newPosts.size());
-
-        return newPosts;
+        CycleLog.count("posts.api", totalPostsFromApi);
+        CycleLog.count("log.suppressed", tagWarnings.drainSuppressed());
+        return totalPostsFromApi;
     }
 
-    @CircuitBreaker(name = "tumblr", fallbackMethod = "fallbackGetPosts")
-    private List<TumblrPostDTO> getPostsByTag(String tag) {
-        try {
-            rateLimiter.waitForRateLimit();
-
-            Map<String, Object> options = new HashMap<>();
-            int FETCH_LIMIT = 20;
-            options.put("limit", FETCH_LIMIT);
+    // Нет ответа (сеть, таймаут, неразборчивый ответ) или ошибка на стороне Tumblr
+    private static boolean isServiceFailure(Exception e) {
+        if (e instanceof TumblrApiException api) {
+            return api.getStatusCode() < 0 || api.getStatusCode() >= 500;
+        }
+        if (e instanceof JumblrException jumblr) {
+            return jumblr.getResponseCode() >= 500;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            log.debug("Запрос к Tumblr API для тега '{}'...", tag);
-            List<Post> posts = tumblrClient.tagged(tag, options);
-            log.debug("Получено {} постов от API по тегу '{}'", posts.size(), tag);
+    // Глобальные фильтры: схлопывание реблогов и пороги заметок/возраста.
+    // Реблог не отбрасывается: он идёт под id исходного поста со своими тегами, чтобы пост
+    // получили и подписчики тегов, которые есть только у реблога. Уже получившим исходный пост
+    // повтор не уйдёт - состояние доставки ведётся по id владельца.
+    public List<TumblrPostDTO> filterNewPosts(TagBatch batch) {
+        Map<Long, TumblrPostDTO> acceptedById = new LinkedHashMap<>();
+        int rejected = 0;
+        int collapsed = 0;
+
+        for (TumblrPostDTO post : batch.posts()) {
+
+            long owner = fingerprintIndex.ownerOf(post);
+            if (owner != 0 && owner != post.getId()) {
+                collapsed++;
+                TumblrPostDTO ownerPost = acceptedById.get(owner);
+                if (ownerPost != null) {
+                    // Исходный пост уже прошёл в этой пачке - добавляем к нему теги реблога
+                    acceptedById.put(owner, ownerPost.copyAs(owner,
+                            TagDictionary.union(ownerPost.getTagIds(), post.getTagIds())));
+                    continue;
+                }
+                // Копия, а не правка: посты из кэша запросов переиспользуются следующими циклами
+                post = post.copyAs(owner, post.getTagIds());
+            }
 
-            if (posts.isEmpty()) {
-                log.warn("API не вернул постов по тегу '{}'", tag);
+            boolean passed = postTrackingService.shouldSendPostNow(post);
+            fingerprintIndex.register(post);
+            if (passed) {
+                acceptedById.merge(post.getId(), post, (previous, reblog) ->
+                        previous.copyAs(previous.getId(), TagDictionary.union(previous.getTagIds(), reblog.getTagIds())));
+            } else {
+                rejected++;
             }
+        }
 
-            return posts.stream().map(this::convertToDTO).collect(Collectors.toList());
+        List<TumblrPostDTO> accepted = new ArrayList<>(acceptedById.values());
 
-        } catch (RequestNotPermitted r) {
-            log.warn("Рейт лимит превышен для тега '{}'", tag);
-            return Collections.emptyList();
-        } catch (Exception e) {
-            log.error("Ошибка при обращении к Tumblr API по тегу '{}'", tag, e);
-            throw e; // Пробрасываем для CircuitBreaker
+        CycleLog.count("posts.accepted", accepted.size());
+        CycleLog.count("posts.rejected", rejected);
+        CycleLog.count("posts.collapsed", collapsed);
+        if (log.isDebugEnabled()) {
+            log.debug("Результат по тегу '{}': принято = {}, отклонено = {}, схлопнуто дублей = {}",
+                    batch.tag(), accepted.size(), rejected, collapsed);
         }
+        return accepted;
     }
 
-    private TumblrPostDTO convertToDTO(Post post) {
-        TumblrPostDTO dto = new TumblrPostDTO();
-
-        dto.setId(String.valueOf(post.getId()));
-        dto.setBlogName(post.getBlogName());
-        dto.setPostURL(post.getPostUrl());
-
-        if (post.getTimestamp() != null) {
-            dto.setTimestamp(post.getTimestamp());
+    private List<TumblrPostDTO> getPostsByTag(String tag) {
+        // Пул сам выбирает ключ и берёт один токен на один реальный запрос к API
+        long startedAt = System.nanoTime();
+        TagFetchEvent event = new TagFetchEvent();
+        event.begin();
+        List<TumblrPostDTO> posts = null;
+        try {
+            posts = tumblrClientPool.execute(client -> client.tagged(tag, FETCH_LIMIT));
+        } catch (RuntimeException e) {
+            // Ошибку засчитывает только тот, кто ходил в API; ждущие в TagFetchCache её не повторяют.
+            // В карантин тег отправляют только ответы про сам тег.
+            if (TumblrApiException.isTagSpecific(e)) {
+                tagHealthTracker.recordFailure(tag, e);
+            }
+            throw e;
+        } finally {
+            event.tag = tag;
+            event.posts = posts != null ? posts.size() : 0;
+            event.failed = posts == null;
+            event.commit();
         }
-
-        if (post.getNoteCount() != null) {
-            dto.setNoteCount(String.valueOf(post.getNoteCount()));
+        CycleLog.increment("api.calls");
+        if (log.isDebugEnabled()) {
+            log.debug("Получено {} постов от API по тегу '{}' за {} мс", posts.size(), tag,
+                    (System.nanoTime() - startedAt) / 1_000_000);
         }
+        // Здоровье тега считаем только по реальным запросам, попадания в кэш его не меняют
+        tagHealthTracker.recordSuccess(tag, posts.size(),
+                posts.stream().mapToLong(TumblrPostDTO::getTimestamp).max().orElse(0));
 
-        dto.setType(post.getType());
-        dto.setTags(post.getTags());
-
-        // В зависимости от типа поста извлекаем разные данные
-        switch (post.getType()) {
-
-            case TEXT:
-                TextPost textPost = (TextPost) post;
-
-                Optional.ofNullable(textPost.getBody()).ifPresent(body -> {
-                    dto.setBody(body);
-                    contentExtractor.extractFirstImageUrl(body).ifPresent(dto::setPhotoUrl);
-                    contentExtractor.extractFirstVideoUrl(body).ifPresent(dto::setVideoUrl);
-                });
-
-                if (textPost.getTitle() != null) {
-                    dto.setSummary(textPost.getTitle());
-                }
-                break;
-
-            case PHOTO:
-                PhotoPost photoPost = (PhotoPost) post;
-                if (photoPost.getPhotos() != null && !photoPost.getPhotos().isEmpty()) {
-                    Photo photo = photoPost.getPhotos().getFirst();
-                    if (photo != null && photo.getOriginalSize() != null) {
-                        dto.setPhotoUrl(photo.getOriginalSize().getUrl());
-                    }
-                }
-                if (photoPost.getCaption() != null) {
-                    dto.setSummary(photoPost.getCaption());
-                    dto.setBody(photoPost.getCaption());
-                }
-                if (photoPost.getSourceUrl() != null) {
-                    dto.setSourceUrl(photoPost.getSourceUrl());
-                }
-                break;
-
-            case VIDEO:
-                VideoPost videoPost = (VideoPost) post;
-                if (videoPost.getVideos() != null && !videoPost.getVideos().isEmpty()) {
-                    Video video = videoPost.getVideos().getFirst();
-                    if (video != null) {
-                        dto.setVideoUrl(video.getEmbedCode());
-                    }
-                }
-
-                if (videoPost.getCaption() != null) {
-                    dto.setSummary(videoPost.getCaption());
-                    dto.setBody(videoPost.getCaption());
-                }
-
-                if (videoPost.getSourceUrl() != null) {
-                    dto.setSourceUrl(videoPost.getSourceUrl());
-                }
-                break;
-
-            case QUOTE:
-                QuotePost quotePost = (QuotePost) post;
-                if (quotePost.getText() != null) {
-                    dto.setBody(quotePost.getText());
-                }
-                if (quotePost.getSource() != null) {
-                    dto.setSummary(quotePost.getSource());
-                }
-                break;
-
-            case LINK:
-                LinkPost linkPost = (LinkPost) post;
-                if (linkPost.getTitle() != null) {
-                    dto.setSummary(linkPost.getTitle());
-                }
-                if (linkPost.getDescription() != null) {
-                    dto.setBody(linkPost.getDescription());
-                }
-                if (linkPost.getLinkUrl() != null) {
-                    dto.setSourceUrl(linkPost.getLinkUrl());
-                }
-                break;
-
-            case ANSWER:
-                AnswerPost answerPost = (AnswerPost) post;
-
-                if (answerPost.getQuestion() != null) {
-                    dto.setQuestion(answerPost.getQuestion());
-                }
-
-                if (answerPost.getAnswer() != null) {
-                    dto.setAnswer(answerPost.getAnswer());
-                }
-                break;
-
-            default:
-                dto.setSummary(post.getType() + " post");
-                break;
+        if (posts.isEmpty()) {
+            if (tagWarnings.sample()) {
+                log.warn("API не вернул постов по тегу '{}'", tag);
+            }
+            return posts;
         }
 
-        return dto;
-    }
+        // id тегов клиент уже взял из словаря (см. TumblrConfig)
+        for (TumblrPostDTO post : posts) {
+            post.setFingerprint(PostFingerprint.of(post));
+        }
 
-    private List<TumblrPostDTO> fallbackGetPosts(String tag, Exception e) {
-        log.warn("Tumblr API недоступен, используем fallback для тега '{}'", tag, e);
-        return Collections.emptyList();
+        return posts;
     }
 }
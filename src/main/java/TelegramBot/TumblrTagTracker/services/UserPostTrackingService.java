@@ -1,9 +1,9 @@
 package TelegramBot.TumblrTagTracker.services;
 
 import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
-import TelegramBot.TumblrTagTracker.models.Subscription;
 import TelegramBot.TumblrTagTracker.models.UserPostDelivery;
 import TelegramBot.TumblrTagTracker.repositories.UserPostDeliveryRepository;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +12,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -20,57 +19,90 @@ public class UserPostTrackingService {
 
     private static final Logger log = LoggerFactory.getLogger(UserPostTrackingService.class);
 
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    private static final int STATE_QUERY_CHUNK = 1000;
+
     private final UserPostDeliveryRepository deliveryRepository;
     private final RedisCacheService cacheService;
+    private final TagDictionary tagDictionary;
 
     @Autowired
     public UserPostTrackingService(UserPostDeliveryRepository deliveryRepository,
-                                   RedisCacheService cacheService) {
+                                   RedisCacheService cacheService, TagDictionary tagDictionary) {
         this.deliveryRepository = deliveryRepository;
         this.cacheService = cacheService;
+        this.tagDictionary = tagDictionary;
     }
 
-    public boolean shouldSendToUser(Long userId, TumblrPostDTO post, Set<String> userTags) {
-
-        if (userId == null || post == null || post.getId() == null) {
-            return false;
+    // Раскладывает посты по получателям: подписчики тегов поста (OR по битмапам индекса)
+    // за вычетом тех, кому пост уже доставлен (ANDNOT). Состояние доставок - один запрос на пачку.
+    public Map<Long, List<TumblrPostDTO>> selectRecipients(List<TumblrPostDTO> posts, SubscriberIndex index) {
+        Map<Long, List<TumblrPostDTO>> postsPerUser = new HashMap<>();
+        if (posts.isEmpty() || index.size() == 0) {
+            return postsPerUser;
         }
 
-        if (userTags == null || userTags.isEmpty()) {
-            return false;
-        }
-
-        // Сначала проверяем Redis
-        if (cacheService.wasSentToUser(userId, post.getId())) {
-            log.info("Пост {} уже был отправлен пользователю {} (Redis)", post.getId(), userId);
-            return false;
+        Map<String, RoaringBitmap> sentByPost = new HashMap<>();
+        Map<String, RoaringBitmap> knownByPost = new HashMap<>();
+        // В таблицах id поста - строка
+        List<String> postIds = posts.stream().filter(post -> post.getId() != 0)
+                .map(post -> String.valueOf(post.getId())).distinct().toList();
+
+        for (int from = 0; from < postIds.size(); from += STATE_QUERY_CHUNK) {
+            List<String> chunk = postIds.subList(from, Math.min(from + STATE_QUERY_CHUNK, postIds.size()));
+            for (UserPostDeliveryRepository.DeliveryState state : deliveryRepository.findStatesByPostIds(chunk)) {
+                int ordinal = index.ordinalOf(state.getUserId());
+                if (ordinal < 0) {
+                    continue;
+                }
+                knownByPost.computeIfAbsent(state.getPostId(), id -> new RoaringBitmap()).add(ordinal);
+                if (Boolean.TRUE.equals(state.getWasSent())) {
+                    sentByPost.computeIfAbsent(state.getPostId(), id -> new RoaringBitmap()).add(ordinal);
+                }
+            }
         }
 
-        // Проверяем БД
-        Optional<UserPostDelivery> existing = deliveryRepository.findByUserIdAndPostId(userId, post.getId());
+        List<UserPostDelivery> newDeliveries = new ArrayList<>();
 
-        if (existing.isPresent() && existing.get().getWasSent()) {
-            log.info("Пост {} уже был отправлен пользователю {} (БД)", post.getId(), userId);
-            cacheService.markAsSentToUser(userId, post.getId());
-            return false;
+        for (TumblrPostDTO post : posts) {
+            if (post.getId() == 0) {
+                continue;
+            }
+            String postId = String.valueOf(post.getId());
+
+            RoaringBitmap recipients = RoaringBitmap.andNot(index.match(post.getTagIds()),
+                    sentByPost.getOrDefault(postId, EMPTY));
+            RoaringBitmap known = knownByPost.getOrDefault(postId, EMPTY);
+
+            recipients.forEach((int ordinal) -> {
+                Long userId = index.chatIdOf(ordinal);
+                postsPerUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(post);
+
+                // Запись о необходимости доставки, если её ещё нет
+                if (!known.contains(ordinal)) {
+                    int[] matchedTagIds = TagDictionary.intersect(index.tagIdsOf(ordinal), post.getTagIds());
+                    newDeliveries.add(new UserPostDelivery(userId, postId,
+                            new LinkedHashSet<>(tagDictionary.namesOf(matchedTagIds))));
+                }
+            });
+
+            if (log.isDebugEnabled()) {
+                log.debug("Пост {}: {} получателей", post.getId(), recipients.getCardinality());
+            }
         }
 
-        // Проверяем, совпадают ли теги
-        Set<String> postTags = post.getTags() != null ? new HashSet<>(post.getTags()) : Collections.emptySet();
-        Set<String> matchedTags = userTags.stream().filter(postTags::contains).collect(Collectors.toSet());
-
-        if (matchedTags.isEmpty()) {
-            return false;
-        }
+        deliveryRepository.saveAll(newDeliveries);
+        return postsPerUser;
+    }
 
-        // Создаем запись о необходимости доставки, если ее еще нет
-        if (existing.isEmpty()) {
-            UserPostDelivery delivery = new UserPostDelivery(userId, post.getId(), matchedTags);
-            deliveryRepository.save(delivery);
+    // Был ли пост уже доставлен пользователю (проверка перед отправкой из очереди)
+    public boolean wasDelivered(Long userId, String postId) {
+        if (cacheService.wasSentToUser(userId, postId)) {
+            return true;
         }
-
-        log.info("Пост {} готов к отправке пользователю {} (теги: {})", post.getId(), userId, matchedTags);
-        return true;
+        return deliveryRepository.findByUserIdAndPostId(userId, postId)
+                .map(UserPostDelivery::getWasSent)
+                .orElse(false);
     }
 
     public void markAsSent(Long userId, String postId) {
@@ -91,46 +123,6 @@ public class UserPostTrackingService {
         });
     }
 
-    public List<Long> findUsersForPost(String postId, Set<String> postTags, List<Subscription> allSubscriptions) {
-        List<Long> targetUsers = new ArrayList<>();
-
-        if (postId == null || postTags == null || postTags.isEmpty()) {
-            log.warn("Некорректные параметры для поиска пользователей");
-            return targetUsers;
-        }
-
-        for (Subscription subscription : allSubscriptions) {
-            Long userId = subscription.getChatID();
-            Set<String> userTags = subscription.getTags();
-
-            if (userTags == null || userTags.isEmpty()) {
-                continue;
-            }
-
-            // Проверяем совпадение тегов
-            boolean hasMatchingTags = userTags.stream().anyMatch(postTags::contains);
-            if (!hasMatchingTags) {
-                continue;
-            }
-
-            // Проверяем, не был ли уже отправлен
-            if (cacheService.wasSentToUser(userId, postId)) {
-                continue;
-            }
-
-            Optional<UserPostDelivery> delivery = deliveryRepository
-                    .findByUserIdAndPostId(userId, postId);
-
-            if (delivery.isPresent() && delivery.get().getWasSent()) {
-                continue;
-            }
-
-            targetUsers.add(userId);
-        }
-
-        return targetUsers;
-    }
-
     public void cleanupOldDeliveries(int daysOld) {
         LocalDateTime olderThan = LocalDateTime.now().minusDays(daysOld);
         List<UserPostDelivery> oldDeliveries = deliveryRepository.findOldSentDeliveries(olderThan);
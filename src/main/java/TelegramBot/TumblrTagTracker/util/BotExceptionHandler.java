@@ -12,6 +12,8 @@ public class BotExceptionHandler {
         if (e instanceof SubscriptionNotFoundException) {
             response.setText(e.getMessage());
             log.warn("Подписка не найдена для пользователя {}: {}", chatID, e.getMessage());
+        } else if (e instanceof InvalidTagExpressionException) {
+            response.setText("Не удалось разобрать фильтр: " + e.getMessage());
         } else if (e instanceof DatabaseException) {
             response.setText("Ошибка базы данных. Попробуйте позже.");
             log.warn("Ошибка со стороны БД для пользователя {}.", chatID, e);
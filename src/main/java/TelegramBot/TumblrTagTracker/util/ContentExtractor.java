@@ -2,7 +2,6 @@ package TelegramBot.TumblrTagTracker.util;
 
 import org.springframework.stereotype.Component;
 
-import java.util.Collections;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -10,13 +9,21 @@ import java.util.regex.Pattern;
 @Component
 public class ContentExtractor {
 
+    private static final Pattern IMG_SRC_PATTERN =
+            Pattern.compile("<img[^>]+src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VIDEO_SRC_PATTERN =
+            Pattern.compile("<video[^>]+src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IMAGE_EXTENSION_PATTERN =
+            Pattern.compile(".*\\.(jpg|jpeg|png|gif|bmp|webp|svg)(\\?.*)?$");
+    private static final Pattern VIDEO_EXTENSION_PATTERN =
+            Pattern.compile(".*\\.(mp4|webm|mov|avi|mkv|flv|wmv|m4v)(\\?.*)?$");
+
     public Optional<String> extractFirstImageUrl(String html) {
         if (html == null || html.isEmpty()) {
             return Optional.empty();
         }
 
-        Pattern pattern = Pattern.compile("<img[^>]+src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(html);
+        Matcher matcher = IMG_SRC_PATTERN.matcher(html);
 
         if (matcher.find()) {
             String imageUrl = matcher.group(1);
@@ -32,8 +39,7 @@ public class ContentExtractor {
             return Optional.empty();
         }
 
-        Pattern pattern = Pattern.compile("<video[^>]+src=[\"']([^\"']+)[\"'][^>]*>", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(html);
+        Matcher matcher = VIDEO_SRC_PATTERN.matcher(html);
 
         if (matcher.find()) {
             String videoUrl = matcher.group(1);
@@ -44,15 +50,40 @@ public class ContentExtractor {
         return Optional.empty();
     }
 
+    // Первые теги <img> и <video> из HTML - всё, что потом нужно extractFirst*Url.
+    // Простой поиск без регулярных выражений: при получении поста тело целиком не храним.
+    public String extractMediaTags(String html) {
+        if (html == null || html.isEmpty()) {
+            return null;
+        }
+
+        String image = firstTag(html, "<img");
+        String video = firstTag(html, "<video");
+        if (image == null) {
+            return video;
+        }
+        return video == null ? image : image + video;
+    }
+
+    private static String firstTag(String html, String open) {
+        for (int i = 0, last = html.length() - open.length(); i <= last; i++) {
+            if (html.regionMatches(true, i, open, 0, open.length())) {
+                int end = html.indexOf('>', i);
+                return end < 0 ? null : html.substring(i, end + 1);
+            }
+        }
+        return null;
+    }
+
     private boolean isValidImageUrl(String url) {
         return url != null &&
                 (url.startsWith("http://") || url.startsWith("https://")) &&
-                url.toLowerCase().matches(".*\\.(jpg|jpeg|png|gif|bmp|webp|svg)(\\?.*)?$");
+                IMAGE_EXTENSION_PATTERN.matcher(url.toLowerCase()).matches();
     }
 
     private boolean isValidVideoUrl(String url) {
         return url != null &&
                 (url.startsWith("http://") || url.startsWith("https://")) &&
-                url.toLowerCase().matches(".*\\.(mp4|webm|mov|avi|mkv|flv|wmv|m4v)(\\?.*)?$");
+                VIDEO_EXTENSION_PATTERN.matcher(url.toLowerCase()).matches();
     }
 }
@@ -0,0 +1,98 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.slf4j.spi.LoggingEventBuilder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сводка одного цикла задачи: вместо строки лога на каждый тег и пост горячие места
+// только увеличивают счётчики, а в конце цикла пишется одна строка с итогами.
+// Идентификатор цикла лежит в MDC (cycleId) и попадает в каждую строку лога, в том числе
+// в JSON при logging.structured.format.console=logstash.
+public final class CycleLog {
+
+    public static final String CYCLE_ID = "cycleId";
+
+    private static final ThreadLocal<CycleLog> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final String id;
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private CycleLog(String name) {
+        this.name = name;
+        this.id = Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xffffffffL);
+    }
+
+    // Открывает цикл в текущем потоке; закрывается через finish
+    public static CycleLog start(String name) {
+        CycleLog cycle = new CycleLog(name);
+        CURRENT.set(cycle);
+        MDC.put(CYCLE_ID, cycle.id);
+        return cycle;
+    }
+
+    // Увеличивает счётчик текущего цикла; вне цикла ничего не делает
+    public static void count(String counter, long delta) {
+        CycleLog cycle = CURRENT.get();
+        if (cycle != null && delta != 0) {
+            cycle.counters.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+        }
+    }
+
+    public static void increment(String counter) {
+        count(counter, 1);
+    }
+
+    // Переносит текущий цикл в задачу для другого потока (стадии конвейера)
+    public static Runnable propagate(Runnable task) {
+        CycleLog cycle = CURRENT.get();
+        if (cycle == null) {
+            return task;
+        }
+        return () -> {
+            CURRENT.set(cycle);
+            MDC.put(CYCLE_ID, cycle.id);
+            try {
+                task.run();
+            } finally {
+                CURRENT.remove();
+                MDC.remove(CYCLE_ID);
+            }
+        };
+    }
+
+    public String id() {
+        return id;
+    }
+
+    // Одна строка итогов: счётчики идут и в текст, и отдельными полями для JSON.
+    // Пустой цикл (например, опрос очереди без работы) пишется только на DEBUG.
+    public void finish(Logger log, Duration duration) {
+        try {
+            boolean empty = counters.isEmpty();
+            if (empty ? !log.isDebugEnabled() : !log.isInfoEnabled()) {
+                return;
+            }
+
+            Map<String, Long> totals = new TreeMap<>();
+            counters.forEach((counter, adder) -> totals.put(counter, adder.sum()));
+
+            LoggingEventBuilder event = empty ? log.atDebug() : log.atInfo();
+            event = event.addKeyValue("job", name).addKeyValue("durationMs", duration.toMillis());
+            for (Map.Entry<String, Long> total : totals.entrySet()) {
+                event = event.addKeyValue(total.getKey(), total.getValue());
+            }
+            event.log("Цикл {} [{}] завершён за {} мс {}", name, id, duration.toMillis(), totals);
+        } finally {
+            CURRENT.remove();
+            MDC.remove(CYCLE_ID);
+        }
+    }
+}
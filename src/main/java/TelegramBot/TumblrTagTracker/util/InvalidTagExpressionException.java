@@ -0,0 +1,7 @@
+package TelegramBot.TumblrTagTracker.util;
+
+public class InvalidTagExpressionException extends RuntimeException {
+    public InvalidTagExpressionException(String message) {
+        super(message);
+    }
+}
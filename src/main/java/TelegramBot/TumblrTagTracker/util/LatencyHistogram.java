@@ -0,0 +1,51 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Гистограмма задержек с экспоненциальными корзинами (границы - степени двойки в миллисекундах).
+// Без блокировок и аллокаций на запись; перцентиль - верхняя граница корзины, точность до двух раз.
+public class LatencyHistogram {
+
+    // Корзина i покрывает задержки до 2^i мс, последняя - всё, что дольше ~6 дней
+    private static final int BUCKETS = 31;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(Duration latency) {
+        long millis = Math.max(0, latency.toMillis());
+        int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Верхняя граница задержки для доли quantile (0.99 - p99); Duration.ZERO, если записей нет
+    public Duration percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Duration.ofMillis(1L << i);
+            }
+        }
+        return Duration.ofMillis(1L << (BUCKETS - 1));
+    }
+}
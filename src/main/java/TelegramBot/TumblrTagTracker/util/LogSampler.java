@@ -0,0 +1,41 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ограничитель частоты для событий по отдельным тегам и постам: не больше limit строк за окно,
+// остальные только считаются. Проверка - пара атомарных операций без аллокаций, поэтому
+// её можно ставить в горячий цикл перед log.warn/log.info.
+public class LogSampler {
+
+    private final int limit;
+    private final long windowNanos;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong inWindow = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public LogSampler(int limit, Duration window) {
+        this.limit = limit;
+        this.windowNanos = window.toNanos();
+    }
+
+    // true - событие можно записать в лог, false - лимит окна исчерпан
+    public boolean sample() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            inWindow.set(0);
+        }
+        if (inWindow.incrementAndGet() <= limit) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    // Сколько событий пропущено с прошлого вызова - для строки итогов цикла
+    public long drainSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
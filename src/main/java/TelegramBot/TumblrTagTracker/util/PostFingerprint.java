@@ -0,0 +1,66 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Отпечаток содержимого поста: у реблогов разные id, но один исходный пост.
+// Если API отдал id исходного поста - берём его, иначе хеш полного содержимого (contentHash,
+// считается при получении до обрезки текста) и ссылок на медиа.
+public final class PostFingerprint {
+
+    private static final Pattern HTML_TAG_PATTERN = Pattern.compile("<[^>]+>");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    private PostFingerprint() {
+    }
+
+    public static String of(TumblrPostDTO post) {
+        if (post.getRebloggedRootId() != 0) {
+            return "r:" + post.getRebloggedRootId();
+        }
+
+        String content = nullToEmpty(post.getContentHash());
+        // Медиа из тела уже вошли в contentHash, здесь - явно заполненные поля
+        String media = nullToEmpty(post.getPhotoUrl()) + "|" + nullToEmpty(post.getVideoUrl()) + "|"
+                + nullToEmpty(post.getSourceUrl());
+
+        if (content.isEmpty() && media.replace("|", "").isEmpty()) {
+            return "p:" + post.getId(); // схлопывать нечего
+        }
+
+        return "h:" + sha256(content + "#" + media);
+    }
+
+    // Хеш полного содержимого поста: текстовые части нормализуются, mediaHtml берётся как есть.
+    // Вызывается при получении, пока текст не обрезан до размера сообщения.
+    public static String contentHash(String summary, String body, String mediaHtml) {
+        return sha256(normalize(summary) + "|" + normalize(body) + "|" + nullToEmpty(mediaHtml));
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = HTML_TAG_PATTERN.matcher(value).replaceAll(" ");
+        return WHITESPACE_PATTERN.matcher(stripped).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
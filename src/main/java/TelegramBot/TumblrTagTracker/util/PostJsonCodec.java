@@ -0,0 +1,56 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Сериализация постов для хранения вне памяти (очередь доставки, общий кэш запросов по тегам).
+// Пишем только поля DTO, без вычисляемых геттеров вроде getFormattedMessage.
+@Component
+public class PostJsonCodec {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public String encode(TumblrPostDTO post) {
+        try {
+            return mapper.writeValueAsString(post);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать пост " + post.getId(), e);
+        }
+    }
+
+    public TumblrPostDTO decode(String json) {
+        try {
+            return mapper.readValue(json, TumblrPostDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось прочитать пост из JSON", e);
+        }
+    }
+
+    public String encodeAll(List<TumblrPostDTO> posts) {
+        try {
+            return mapper.writeValueAsString(posts);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать список постов", e);
+        }
+    }
+
+    public List<TumblrPostDTO> decodeAll(String json) {
+        try {
+            return mapper.readValue(json, new TypeReference<List<TumblrPostDTO>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось прочитать список постов из JSON", e);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import java.util.*;
+
+// Фильтр подписки вида "lord of the mysteries" AND fanart NOT nsfw.
+// Операторы AND, OR, NOT пишутся заглавными, скобки группируют, соседние теги без оператора - это AND.
+// Выражение приводится к ДНФ: список веток "все required есть и ни одного excluded нет".
+public final class TagExpression {
+
+    public static final int MAX_CLAUSES = 16;
+
+    public record Clause(Set<String> required, Set<String> excluded) {
+    }
+
+    private sealed interface Node permits TagNode, NotNode, AndNode, OrNode {
+    }
+
+    private record TagNode(String tag) implements Node {
+    }
+
+    private record NotNode(Node operand) implements Node {
+    }
+
+    private record AndNode(List<Node> operands) implements Node {
+    }
+
+    private record OrNode(List<Node> operands) implements Node {
+    }
+
+    private enum TokenType {TAG, AND, OR, NOT, OPEN, CLOSE}
+
+    private record Token(TokenType type, String text) {
+    }
+
+    private final Node root;
+    private final List<Clause> clauses;
+
+    private TagExpression(Node root) {
+        this.root = root;
+        this.clauses = toDnf(root, false);
+
+        if (clauses.isEmpty()) {
+            throw new InvalidTagExpressionException("Выражение противоречиво и никогда не сработает.");
+        }
+        for (Clause clause : clauses) {
+            if (clause.required().isEmpty()) {
+                throw new InvalidTagExpressionException(
+                        "Каждая ветка выражения должна требовать хотя бы один тег без NOT.");
+            }
+        }
+    }
+
+    // Аргументы команды: кавычки уже сняты парсером бота, скобки могут быть приклеены к тегам
+    public static TagExpression parse(List<String> args) {
+        List<Token> tokens = new ArrayList<>();
+        for (String arg : args) {
+            String rest = arg.trim();
+            while (rest.startsWith("(")) {
+                tokens.add(new Token(TokenType.OPEN, "("));
+                rest = rest.substring(1).trim();
+            }
+            int closing = 0;
+            while (rest.endsWith(")")) {
+                closing++;
+                rest = rest.substring(0, rest.length() - 1).trim();
+            }
+            if (rest.indexOf('"') >= 0) {
+                // В канонической форме кавычка ограничивает тег, экранировать её нечем
+                throw new InvalidTagExpressionException("Тег не может содержать кавычку: " + rest);
+            }
+            if (!rest.isEmpty()) {
+                tokens.add(switch (rest) {
+                    case "AND" -> new Token(TokenType.AND, rest);
+                    case "OR" -> new Token(TokenType.OR, rest);
+                    case "NOT" -> new Token(TokenType.NOT, rest);
+                    default -> new Token(TokenType.TAG, rest.toLowerCase());
+                });
+            }
+            for (int i = 0; i < closing; i++) {
+                tokens.add(new Token(TokenType.CLOSE, ")"));
+            }
+        }
+        return new Parser(tokens).parseAll();
+    }
+
+    // Сохранённая каноническая форма (см. toString): теги с пробелами, скобками и словами-операторами в кавычках
+    public static TagExpression parse(String source) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? TokenType.OPEN : TokenType.CLOSE, String.valueOf(c)));
+                i++;
+            } else if (c == '"') {
+                int end = source.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new InvalidTagExpressionException("Незакрытая кавычка в выражении.");
+                }
+                tokens.add(new Token(TokenType.TAG, source.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < source.length() && !Character.isWhitespace(source.charAt(end))
+                        && "()\"".indexOf(source.charAt(end)) < 0) {
+                    end++;
+                }
+                String word = source.substring(i, end);
+                tokens.add(switch (word) {
+                    case "AND" -> new Token(TokenType.AND, word);
+                    case "OR" -> new Token(TokenType.OR, word);
+                    case "NOT" -> new Token(TokenType.NOT, word);
+                    default -> new Token(TokenType.TAG, word);
+                });
+                i = end;
+            }
+        }
+        return new Parser(tokens).parseAll();
+    }
+
+    public List<Clause> clauses() {
+        return clauses;
+    }
+
+    public Set<String> tags() {
+        Set<String> tags = new LinkedHashSet<>();
+        collectTags(root, tags);
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return render(root, false);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TagExpression other && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    private static final class Parser {
+
+        private final List<Token> tokens;
+        private int position;
+
+        Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        TagExpression parseAll() {
+            if (tokens.isEmpty()) {
+                throw new InvalidTagExpressionException("Пустое выражение.");
+            }
+            Node node = parseOr();
+            if (position < tokens.size()) {
+                throw new InvalidTagExpressionException("Лишний символ в выражении: " + tokens.get(position).text());
+            }
+            return new TagExpression(node);
+        }
+
+        // or := and (OR and)*
+        private Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (peek(TokenType.OR)) {
+                position++;
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new OrNode(operands);
+        }
+
+        // and := unary ((AND)? unary)*
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (position < tokens.size() && !peek(TokenType.OR) && !peek(TokenType.CLOSE)) {
+                if (peek(TokenType.AND)) {
+                    position++;
+                }
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new AndNode(operands);
+        }
+
+        // unary := NOT unary | ( or ) | TAG
+        private Node parseUnary() {
+            if (position >= tokens.size()) {
+                throw new InvalidTagExpressionException("Выражение оборвано: после оператора нужен тег.");
+            }
+            Token token = tokens.get(position++);
+            return switch (token.type()) {
+                case NOT -> new NotNode(parseUnary());
+                case OPEN -> {
+                    Node inner = parseOr();
+                    if (!peek(TokenType.CLOSE)) {
+                        throw new InvalidTagExpressionException("Не хватает закрывающей скобки.");
+                    }
+                    position++;
+                    yield inner;
+                }
+                case TAG -> new TagNode(token.text());
+                default -> throw new InvalidTagExpressionException("Ожидался тег, а встретилось: " + token.text());
+            };
+        }
+
+        private boolean peek(TokenType type) {
+            return position < tokens.size() && tokens.get(position).type() == type;
+        }
+    }
+
+    private static List<Clause> toDnf(Node node, boolean negated) {
+        return switch (node) {
+            case TagNode tag -> negated
+                    ? List.of(new Clause(Set.of(), Set.of(tag.tag())))
+                    : List.of(new Clause(Set.of(tag.tag()), Set.of()));
+            case NotNode not -> toDnf(not.operand(), !negated);
+            // NOT (a AND b) = NOT a OR NOT b, NOT (a OR b) = NOT a AND NOT b
+            case AndNode and -> negated ? union(and.operands(), true) : product(and.operands(), false);
+            case OrNode or -> negated ? product(or.operands(), true) : union(or.operands(), false);
+        };
+    }
+
+    private static List<Clause> union(List<Node> operands, boolean negated) {
+        List<Clause> result = new ArrayList<>();
+        for (Node operand : operands) {
+            result.addAll(toDnf(operand, negated));
+            checkSize(result);
+        }
+        return result;
+    }
+
+    private static List<Clause> product(List<Node> operands, boolean negated) {
+        List<Clause> result = List.of(new Clause(Set.of(), Set.of()));
+        for (Node operand : operands) {
+            List<Clause> next = new ArrayList<>();
+            for (Clause left : result) {
+                for (Clause right : toDnf(operand, negated)) {
+                    Set<String> required = new HashSet<>(left.required());
+                    required.addAll(right.required());
+                    Set<String> excluded = new HashSet<>(left.excluded());
+                    excluded.addAll(right.excluded());
+                    // Ветка вида "a AND NOT a" не сработает никогда
+                    if (Collections.disjoint(required, excluded)) {
+                        next.add(new Clause(Set.copyOf(required), Set.copyOf(excluded)));
+                    }
+                }
+            }
+            checkSize(next);
+            result = next;
+        }
+        return result;
+    }
+
+    private static void checkSize(List<Clause> clauses) {
+        if (clauses.size() > MAX_CLAUSES) {
+            throw new InvalidTagExpressionException("Выражение слишком сложное, упростите его.");
+        }
+    }
+
+    private static void collectTags(Node node, Set<String> tags) {
+        switch (node) {
+            case TagNode tag -> tags.add(tag.tag());
+            case NotNode not -> collectTags(not.operand(), tags);
+            case AndNode and -> and.operands().forEach(operand -> collectTags(operand, tags));
+            case OrNode or -> or.operands().forEach(operand -> collectTags(operand, tags));
+        }
+    }
+
+    private static String render(Node node, boolean nested) {
+        return switch (node) {
+            case TagNode tag -> quoteIfNeeded(tag.tag());
+            case NotNode not -> "NOT " + render(not.operand(), true);
+            case AndNode and -> wrap(join(and.operands(), " AND "), nested);
+            case OrNode or -> wrap(join(or.operands(), " OR "), nested);
+        };
+    }
+
+    private static String join(List<Node> operands, String operator) {
+        StringJoiner joiner = new StringJoiner(operator);
+        operands.forEach(operand -> joiner.add(render(operand, true)));
+        return joiner.toString();
+    }
+
+    private static String wrap(String text, boolean nested) {
+        return nested ? "(" + text + ")" : text;
+    }
+
+    private static String quoteIfNeeded(String tag) {
+        boolean needsQuotes = tag.chars().anyMatch(c -> Character.isWhitespace(c) || c == '(' || c == ')')
+                || tag.equalsIgnoreCase("and") || tag.equalsIgnoreCase("or") || tag.equalsIgnoreCase("not");
+        return needsQuotes ? "\"" + tag + "\"" : tag;
+    }
+}
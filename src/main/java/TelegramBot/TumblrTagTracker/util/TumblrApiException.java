@@ -0,0 +1,44 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import com.tumblr.jumblr.exceptions.JumblrException;
+
+public class TumblrApiException extends RuntimeException {
+
+    // HTTP-статус ответа; -1 - ответа не было (сеть, таймаут, разбор)
+    private final int statusCode;
+
+    public TumblrApiException(String message) {
+        this(message, -1);
+    }
+
+    public TumblrApiException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public TumblrApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = -1;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    // Ответ про сам тег (4xx), а не про ключ, лимит или состояние Tumblr
+    public static boolean isTagSpecificStatus(int statusCode) {
+        return statusCode >= 400 && statusCode < 500
+                && statusCode != 401 && statusCode != 403 && statusCode != 429;
+    }
+
+    // То же для исключений обоих клиентов (http и Jumblr)
+    public static boolean isTagSpecific(Throwable e) {
+        if (e instanceof TumblrApiException api) {
+            return isTagSpecificStatus(api.getStatusCode());
+        }
+        if (e instanceof JumblrException jumblr) {
+            return isTagSpecificStatus(jumblr.getResponseCode());
+        }
+        return false;
+    }
+}
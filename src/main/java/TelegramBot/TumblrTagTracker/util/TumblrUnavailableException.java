@@ -0,0 +1,7 @@
+package TelegramBot.TumblrTagTracker.util;
+
+public class TumblrUnavailableException extends RuntimeException {
+    public TumblrUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,46 @@
+-- Token bucket для лимита запросов к Tumblr API, общий для всех инстансов бота.
+-- KEYS[1] - ключ бакета
+-- ARGV[1] - ёмкость бакета (запросов за период)
+-- ARGV[2] - период полного пополнения в миллисекундах
+-- ARGV[3] - сколько токенов забрать (0 - только узнать остаток)
+-- Возвращает {получено (1/0), остаток токенов, сколько мс ждать следующего токена}
+
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- Время берём у Redis, чтобы часы инстансов не влияли на пополнение
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+
+local rate = capacity / period
+local elapsed = math.max(0, now - ts)
+tokens = math.min(capacity, tokens + elapsed * rate)
+
+local acquired = 0
+local wait = 0
+
+if requested == 0 then
+    return {1, math.floor(tokens), 0}
+end
+
+if tokens >= requested then
+    tokens = tokens - requested
+    acquired = 1
+else
+    wait = math.ceil((requested - tokens) / rate)
+end
+
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+redis.call('PEXPIRE', KEYS[1], period * 2)
+
+return {acquired, math.floor(tokens), wait}
@@ -0,0 +1,14 @@
+package TelegramBot.TumblrTagTracker;
+
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.mysql.MySQLContainer;
+
+// Один MySQL на все тесты репозиториев: подключается через @ImportTestcontainers(MySqlTestContainer.class).
+// Схему создаёт Hibernate (DDL_AUTO=create-drop в свойствах теста)
+public interface MySqlTestContainer {
+
+    @Container
+    @ServiceConnection
+    MySQLContainer mysql = new MySQLContainer("mysql:8.4");
+}
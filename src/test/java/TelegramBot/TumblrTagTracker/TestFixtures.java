@@ -0,0 +1,48 @@
+package TelegramBot.TumblrTagTracker;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+
+import java.time.LocalDateTime;
+
+// Общие заготовки для тестов: посты и строки очереди доставки с минимумом заполненных полей
+public final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    public static TumblrPostDTO post(long id) {
+        TumblrPostDTO post = new TumblrPostDTO();
+        post.setId(id);
+        return post;
+    }
+
+    // Пост для проверок дедупликации и фильтра: отпечаток и id тегов уже известны
+    public static TumblrPostDTO post(long id, String fingerprint, int... tagIds) {
+        TumblrPostDTO post = post(id);
+        post.setFingerprint(fingerprint);
+        if (tagIds.length > 0) {
+            post.setTagIds(tagIds);
+        }
+        return post;
+    }
+
+    // Пост с телом в HTML - текст и медиа разбираются так же, как в клиентах
+    public static TumblrPostDTO postWithBody(long id, String body) {
+        TumblrPostDTO post = post(id);
+        post.setContent(null, body);
+        return post;
+    }
+
+    // Строка очереди, уже получившая id; срок отправки наступил минуту назад
+    public static DeliveryOutbox outboxRow(long id, long userId, boolean digest) {
+        DeliveryOutbox row = new DeliveryOutbox(userId, "post-" + id, "{}", LocalDateTime.now().minusMinutes(1), digest);
+        row.setId(id);
+        return row;
+    }
+
+    // Новая строка очереди для записи в базу: id выдаст генератор
+    public static DeliveryOutbox outboxRow(long userId, LocalDateTime dueAt) {
+        return new DeliveryOutbox(userId, "post-" + userId + "-" + dueAt, "{}", dueAt, false);
+    }
+}
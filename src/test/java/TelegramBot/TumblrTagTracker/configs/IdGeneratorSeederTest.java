@@ -0,0 +1,110 @@
+package TelegramBot.TumblrTagTracker.configs;
+
+import TelegramBot.TumblrTagTracker.MySqlTestContainer;
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import TelegramBot.TumblrTagTracker.repositories.DeliveryOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static TelegramBot.TumblrTagTracker.configs.IdGeneratorSeeder.ALLOCATION_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Свежий контекст: генератор Hibernate не должен держать блок id, выданный до выравнивания.
+// Сидер пишет вне транзакции теста, как при настоящем старте
+@DataJpaTest(properties = {"DDL_AUTO=create-drop", "SHOW_SQL=false"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportTestcontainers(MySqlTestContainer.class)
+@Testcontainers(disabledWithoutDocker = true)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdGeneratorSeederTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeliveryOutboxRepository outboxRepository;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM delivery_outbox");
+        jdbcTemplate.update("DELETE FROM id_generators");
+    }
+
+    // Строка, вставленная ещё с auto-increment id
+    private void legacyRow(long id) {
+        jdbcTemplate.update("INSERT INTO delivery_outbox (id, user_id, post_id, payload, status, due_at, attempts, digest) "
+                + "VALUES (?, 1, ?, '{}', 'SENT', NOW(), 0, false)", id, "legacy-" + id);
+    }
+
+    private long nextVal(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT next_val FROM id_generators WHERE sequence_name = ?", Long.class, sequence);
+    }
+
+    @Test
+    void instancesStartingTogetherSeedAboveExistingIds() throws Exception {
+        legacyRow(4_000);
+        legacyRow(4_321);
+
+        ExecutorService instances = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> seeds = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                IdGeneratorSeeder seeder = new IdGeneratorSeeder(jdbcTemplate);
+                seeds.add(instances.submit(() -> {
+                    start.await();
+                    seeder.seed();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> seed : seeds) {
+                seed.get(30, TimeUnit.SECONDS); // взаимная блокировка в MySQL пришла бы сюда исключением
+            }
+        } finally {
+            instances.shutdownNow();
+        }
+
+        assertEquals(4_321 + ALLOCATION_SIZE, nextVal("delivery_outbox"));
+        assertEquals(ALLOCATION_SIZE, nextVal("user_post_delivery"));
+
+        // Первый блок Hibernate берёт уже после выравнивания: новые id выше старых и не повторяются
+        List<DeliveryOutbox> saved = outboxRepository.saveAll(IntStream.range(0, 3 * ALLOCATION_SIZE)
+                .mapToObj(i -> new DeliveryOutbox(2L, "new-" + i, "{}", LocalDateTime.now(), false))
+                .toList());
+
+        assertTrue(saved.stream().allMatch(row -> row.getId() > 4_321));
+        assertEquals(saved.size(), saved.stream().map(DeliveryOutbox::getId).distinct().count());
+    }
+
+    @Test
+    void seedingNeverLowersGenerator() {
+        legacyRow(100);
+        jdbcTemplate.update("INSERT INTO id_generators (sequence_name, next_val) VALUES ('delivery_outbox', 10000)");
+
+        new IdGeneratorSeeder(jdbcTemplate).seed();
+        new IdGeneratorSeeder(jdbcTemplate).seed();
+
+        assertEquals(10_000, nextVal("delivery_outbox"));
+    }
+}
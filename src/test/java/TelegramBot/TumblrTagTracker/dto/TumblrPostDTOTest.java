@@ -0,0 +1,64 @@
+package TelegramBot.TumblrTagTracker.dto;
+
+import TelegramBot.TumblrTagTracker.util.PostFingerprint;
+import com.tumblr.jumblr.types.Post;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Collection;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TumblrPostDTOTest {
+
+    private static final String IMAGE = "<img src=\"https://64.media.tumblr.com/0a1b2c3d4e5f/s1280x1920/photo.jpg\">";
+
+    // Типичный текстовый пост с длинным телом, картинкой и дюжиной тегов - так его собирают клиенты
+    private static TumblrPostDTO longTextPost() {
+        TumblrPostDTO post = post(745123456789012345L, null, 3, 8, 15, 16, 23, 42, 108, 256, 512, 1024, 2048, 4096);
+        post.setBlogName("someblog");
+        post.setPostURL("https://someblog.tumblr.com/post/745123456789012345/some-slug");
+        post.setType(Post.PostType.TEXT);
+        post.setTimestamp(1_760_000_000L);
+        post.setNoteCount(1234);
+        post.setContent(null, "<p>" + "<b>word</b> ".repeat(1000) + "</p>" + IMAGE);
+        post.setFingerprint(PostFingerprint.of(post));
+        return post;
+    }
+
+    @Test
+    void textIsCleanedAndClippedAtIngest() {
+        TumblrPostDTO post = longTextPost();
+
+        assertEquals(501, post.getText().length());
+        assertFalse(post.getText().contains("<"));
+        assertEquals(IMAGE, post.getMediaHtml());
+    }
+
+    @Test
+    void retainedSizeDoesNotDependOnBodyLength() {
+        TumblrPostDTO post = longTextPost();
+
+        GraphLayout layout = GraphLayout.parseInstance(post);
+
+        // Сырое тело - больше 11 КБ; в памяти остаются обрезанный текст, теги медиа и id тегов.
+        // Запас - на раскладку без сжатых указателей (куча больше 32 ГБ).
+        assertTrue(layout.totalSize() < 2048, () -> layout.toFootprint());
+        // Имена тегов и списки в посте не хранятся
+        assertTrue(layout.getClasses().stream().noneMatch(Collection.class::isAssignableFrom), () -> layout.toFootprint());
+    }
+
+    @Test
+    void copyKeepsContentAndReplacesIdAndTags() {
+        TumblrPostDTO post = longTextPost();
+
+        TumblrPostDTO copy = post.copyAs(1L, new int[]{3});
+
+        assertEquals(1L, copy.getId());
+        assertArrayEquals(new int[]{3}, copy.getTagIds());
+        assertSame(post.getText(), copy.getText());
+        assertEquals(post.getFingerprint(), copy.getFingerprint());
+        assertEquals(745123456789012345L, post.getId());
+    }
+}
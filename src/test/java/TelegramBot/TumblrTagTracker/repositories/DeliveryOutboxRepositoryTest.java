@@ -0,0 +1,126 @@
+package TelegramBot.TumblrTagTracker.repositories;
+
+import TelegramBot.TumblrTagTracker.MySqlTestContainer;
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.outboxRow;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"DDL_AUTO=create-drop", "SHOW_SQL=false"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportTestcontainers(MySqlTestContainer.class)
+@Testcontainers(disabledWithoutDocker = true)
+class DeliveryOutboxRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 19, 12, 0);
+
+    @Autowired
+    private DeliveryOutboxRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static DeliveryOutbox pending(long userId, int minutesAgo) {
+        return outboxRow(userId, NOW.minusMinutes(minutesAgo));
+    }
+
+    private static DeliveryOutbox inProgress(long userId, int minutesAgo, LocalDateTime leaseUntil) {
+        DeliveryOutbox row = pending(userId, minutesAgo);
+        row.setStatus(DeliveryOutbox.Status.IN_PROGRESS);
+        row.setClaimedBy("other-instance");
+        row.setLeaseUntil(leaseUntil);
+        return row;
+    }
+
+    private static List<Long> ids(DeliveryOutbox... rows) {
+        return Arrays.stream(rows).map(DeliveryOutbox::getId).toList();
+    }
+
+    @Test
+    void busyUserDoesNotCrowdOutOthers() {
+        DeliveryOutbox busy1 = pending(1, 60), busy2 = pending(1, 59);
+        List<DeliveryOutbox> busyTail = List.of(pending(1, 58), pending(1, 57), pending(1, 56), pending(1, 55));
+        DeliveryOutbox single = pending(2, 30);
+        DeliveryOutbox pair1 = pending(3, 45), pair2 = pending(3, 10);
+        DeliveryOutbox notDueYet = pending(2, -5);
+        repository.saveAll(busyTail);
+        repository.saveAllAndFlush(List.of(single, pair2, notDueYet, busy2, pair1, busy1));
+
+        // У каждого пользователя не больше perUser самых старых записей; первым идёт тот, чья голова старше
+        assertEquals(ids(busy1, busy2, pair1, pair2, single), repository.findFairCandidateIds(NOW, 2, 100));
+        // Лимит режет хвост, а не долю отдельного пользователя
+        assertEquals(ids(busy1, busy2, pair1), repository.findFairCandidateIds(NOW, 2, 3));
+        assertEquals(ids(busy1, pair1, single), repository.findFairCandidateIds(NOW, 1, 100));
+    }
+
+    @Test
+    void userWithWorkInProgressIsSkippedUntilLeaseExpires() {
+        DeliveryOutbox crashed = inProgress(1, 50, NOW.minusMinutes(1));
+        DeliveryOutbox waiting = pending(1, 40);
+        DeliveryOutbox sending = inProgress(2, 50, NOW.plusMinutes(5));
+        DeliveryOutbox blocked = pending(2, 40);
+        DeliveryOutbox free = pending(3, 20);
+        repository.saveAllAndFlush(List.of(crashed, waiting, sending, blocked, free));
+
+        assertEquals(ids(free), repository.findFairCandidateIds(NOW, 5, 100));
+
+        // Истёкшая аренда возвращает запись в очередь, живая - остаётся за владельцем
+        assertEquals(1, repository.releaseExpiredLeases(DeliveryOutbox.Status.PENDING,
+                DeliveryOutbox.Status.IN_PROGRESS, NOW));
+
+        assertEquals(ids(crashed, waiting, free), repository.findFairCandidateIds(NOW, 5, 100));
+    }
+
+    @Test
+    void claimedIdsAreReadOnlyInRequestedStatus() {
+        DeliveryOutbox claimable = pending(1, 10);
+        DeliveryOutbox taken = inProgress(2, 10, NOW.plusMinutes(5));
+        repository.saveAllAndFlush(List.of(claimable, taken));
+
+        List<DeliveryOutbox> locked = repository.findByIdsForUpdate(ids(claimable, taken), DeliveryOutbox.Status.PENDING);
+
+        assertEquals(ids(claimable), locked.stream().map(DeliveryOutbox::getId).toList());
+    }
+
+    // Строки должны быть закоммичены, чтобы их видела вторая транзакция, поэтому без общей транзакции теста
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void rowsLockedByOneInstanceAreSkippedByAnother() {
+        TransactionTemplate instanceA = new TransactionTemplate(transactionManager);
+        TransactionTemplate instanceB = new TransactionTemplate(transactionManager);
+        instanceB.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        List<DeliveryOutbox> rows = instanceA.execute(status ->
+                repository.saveAll(List.of(pending(1, 10), pending(2, 10))));
+        List<Long> both = ids(rows.get(0), rows.get(1));
+
+        try {
+            List<Long> seenByB = instanceA.execute(status -> {
+                repository.findByIdsForUpdate(List.of(both.get(0)), DeliveryOutbox.Status.PENDING);
+
+                // Своё соединение: первая строка под блокировкой A пропускается сразу, без ожидания
+                return instanceB.execute(inner -> repository.findByIdsForUpdate(both, DeliveryOutbox.Status.PENDING)
+                        .stream().map(DeliveryOutbox::getId).toList());
+            });
+
+            assertEquals(List.of(both.get(1)), seenByB);
+        } finally {
+            instanceA.executeWithoutResult(status -> repository.deleteAllByIdInBatch(both));
+        }
+    }
+}
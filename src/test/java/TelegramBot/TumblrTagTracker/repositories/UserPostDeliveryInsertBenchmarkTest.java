@@ -0,0 +1,118 @@
+package TelegramBot.TumblrTagTracker.repositories;
+
+import TelegramBot.TumblrTagTracker.MySqlTestContainer;
+import TelegramBot.TumblrTagTracker.models.UserPostDelivery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Вставка строк рассылки: по одной с auto-increment id против saveAll пачками с id из генератора.
+// С IDENTITY Hibernate вставлял каждую сущность отдельным запросом, чтобы сразу прочитать ключ, -
+// здесь это воспроизведено тем же SQL на копии таблицы. Запускается только по запросу:
+// mvn test -Dtest=UserPostDeliveryInsertBenchmarkTest -Dbenchmark=true
+@DataJpaTest(properties = {"DDL_AUTO=create-drop", "SHOW_SQL=false"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportTestcontainers(MySqlTestContainer.class)
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserPostDeliveryInsertBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(UserPostDeliveryInsertBenchmarkTest.class);
+
+    private static final int ROWS = 5_000;
+    private static final int ROUNDS = 5; // первый - прогрев
+
+    @Autowired
+    private UserPostDeliveryRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static List<UserPostDelivery> fanOut(int round) {
+        return IntStream.range(0, ROWS)
+                .mapToObj(i -> new UserPostDelivery((long) i % 500, "post-" + round + "-" + i, null))
+                .toList();
+    }
+
+    private void insertOneByOne(List<UserPostDelivery> rows) {
+        for (UserPostDelivery row : rows) {
+            GeneratedKeyHolder key = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO user_post_delivery_identity (user_id, post_id, was_sent, matched_tags, created_at) "
+                                + "VALUES (?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                statement.setLong(1, row.getUserId());
+                statement.setString(2, row.getPostId());
+                statement.setBoolean(3, row.getWasSent());
+                statement.setString(4, row.getMatchedTags());
+                statement.setTimestamp(5, Timestamp.valueOf(row.getCreatedAt()));
+                return statement;
+            }, key);
+            row.setId(key.getKey().longValue());
+        }
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return ROWS * 1e9 / nanos;
+    }
+
+    @Test
+    void batchedInsertsOutrunRowByRowInserts() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_post_delivery_identity LIKE user_post_delivery");
+        jdbcTemplate.execute("ALTER TABLE user_post_delivery_identity MODIFY id BIGINT NOT NULL AUTO_INCREMENT");
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        long bestOneByOne = Long.MAX_VALUE;
+        long bestBatched = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                List<UserPostDelivery> before = fanOut(round);
+                long started = System.nanoTime();
+                transaction.executeWithoutResult(status -> insertOneByOne(before));
+                long oneByOne = System.nanoTime() - started;
+
+                List<UserPostDelivery> after = fanOut(round);
+                started = System.nanoTime();
+                transaction.executeWithoutResult(status -> repository.saveAll(after));
+                long batched = System.nanoTime() - started;
+
+                if (round > 0) {
+                    bestOneByOne = Math.min(bestOneByOne, oneByOne);
+                    bestBatched = Math.min(bestBatched, batched);
+                }
+                assertEquals((long) ROWS * (round + 1), repository.count());
+            }
+        } finally {
+            jdbcTemplate.execute("DROP TABLE user_post_delivery_identity");
+            jdbcTemplate.update("DELETE FROM user_post_delivery");
+        }
+
+        log.info("Вставка {} строк рассылки: по одной {} строк/с, пачками {} строк/с",
+                ROWS, Math.round(rowsPerSecond(bestOneByOne)), Math.round(rowsPerSecond(bestBatched)));
+        assertTrue(bestBatched < bestOneByOne);
+    }
+}
@@ -0,0 +1,102 @@
+package TelegramBot.TumblrTagTracker.schedulers;
+
+import TelegramBot.TumblrTagTracker.services.DeliveryOutboxService;
+import TelegramBot.TumblrTagTracker.services.NotificationService;
+import TelegramBot.TumblrTagTracker.services.PostTrackingService;
+import TelegramBot.TumblrTagTracker.services.UserPostTrackingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.outboxRow;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class DeliveryWorkerTest {
+
+    private final DeliveryOutboxService outboxService = mock(DeliveryOutboxService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPoolExecutor userExecutor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        userExecutor.shutdownNow();
+    }
+
+    private DeliveryWorker worker(int poolSize, int batchSize) {
+        userExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(100), new ThreadPoolExecutor.AbortPolicy());
+        DeliveryWorker worker = new DeliveryWorker(outboxService, mock(NotificationService.class),
+                mock(UserPostTrackingService.class), mock(PostTrackingService.class), userExecutor,
+                new JobRunner(new MockEnvironment()));
+        ReflectionTestUtils.setField(worker, "batchSize", batchSize);
+        return worker;
+    }
+
+    // Занимает потоки пула задачами, которые ждут release
+    private void occupy(int threads) throws InterruptedException {
+        for (int i = 0; i < threads; i++) {
+            userExecutor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        while (userExecutor.getActiveCount() < threads) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void busyPoolDefersClaiming() throws Exception {
+        DeliveryWorker worker = worker(2, 50);
+        occupy(2);
+
+        worker.drainOutbox();
+
+        verify(outboxService, never()).claimDue(anyInt());
+        assertEquals(1, worker.admissionStats().deferredPolls());
+    }
+
+    @Test
+    void claimsOnlyAsManyUnitsAsIdleThreads() throws Exception {
+        DeliveryWorker worker = worker(3, 50);
+        occupy(1);
+
+        worker.drainOutbox();
+
+        verify(outboxService).claimDue(2);
+    }
+
+    @Test
+    void batchSizeCapsClaim() {
+        DeliveryWorker worker = worker(4, 3);
+
+        worker.drainOutbox();
+
+        verify(outboxService).claimDue(3);
+    }
+
+    @Test
+    void claimedUnitsAreAdmittedPerUser() {
+        DeliveryWorker worker = worker(4, 50);
+        when(outboxService.claimDue(4)).thenReturn(List.of(
+                outboxRow(1, 10, true), outboxRow(2, 10, true), outboxRow(3, 20, true)));
+
+        worker.drainOutbox();
+
+        assertEquals(2, worker.admissionStats().admitted());
+        assertEquals(0, worker.admissionStats().rejected());
+    }
+}
@@ -0,0 +1,116 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.repositories.TrackedPostRepository;
+import TelegramBot.TumblrTagTracker.util.CycleLog;
+import ch.qos.logback.classic.Level;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Время цикла проверки тегов с построчным логом (DEBUG) и без него (OFF): выборка по тегам и фильтр
+// постов на заглушках, так что в разнице остаётся только логирование. Запускается только по запросу:
+// mvn test -Dtest=CycleLoggingBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CycleLoggingBenchmarkTest {
+
+    // Итоги цикла пишутся логгером приложения, результат замера - отдельным, который уровень не трогает
+    private static final Logger cycleLog = LoggerFactory.getLogger(TumblrService.class);
+    private static final Logger log = LoggerFactory.getLogger("benchmark");
+
+    private static final int TAGS = 500;
+    private static final int POSTS_PER_TAG = 20;
+    private static final int ROUNDS = 6; // первый - прогрев
+
+    private final ch.qos.logback.classic.Logger appLogger =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("TelegramBot.TumblrTagTracker");
+    private Level originalLevel;
+
+    private TumblrService tumblrService;
+    private Set<String> tags;
+
+    @BeforeEach
+    void setUp() {
+        originalLevel = appLogger.getLevel();
+
+        tags = IntStream.range(0, TAGS).mapToObj(i -> "tag" + i).collect(Collectors.toSet());
+        Map<String, List<TumblrPostDTO>> postsByTag = tags.stream().collect(Collectors.toMap(tag -> tag, tag -> {
+            long first = Long.parseLong(tag.substring(3)) * POSTS_PER_TAG;
+            return IntStream.range(0, POSTS_PER_TAG).mapToObj(i -> post(first + i + 1, "h:" + (first + i + 1), 1)).toList();
+        }));
+
+        TrackedPostRepository trackedPostRepository = mock(TrackedPostRepository.class);
+        when(trackedPostRepository.findFirstByFingerprint(any())).thenReturn(Optional.empty());
+        PostTrackingService postTrackingService = mock(PostTrackingService.class);
+        when(postTrackingService.shouldSendPostNow(any())).thenReturn(true);
+        TagHealthTracker tagHealthTracker = mock(TagHealthTracker.class);
+        when(tagHealthTracker.fetchOrder(anyCollection())).thenAnswer(invocation ->
+                new ArrayList<>(invocation.<Collection<String>>getArgument(0)));
+        TagFetchCache tagFetchCache = mock(TagFetchCache.class);
+        when(tagFetchCache.get(anyString(), any())).thenAnswer(invocation ->
+                postsByTag.get(invocation.<String>getArgument(0)));
+
+        tumblrService = new TumblrService(mock(TumblrClientPool.class), postTrackingService, tagHealthTracker,
+                new FingerprintIndex(trackedPostRepository, Duration.ofHours(1), TAGS * POSTS_PER_TAG), tagFetchCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appLogger.setLevel(originalLevel);
+    }
+
+    private long runCycle(Level level) {
+        appLogger.setLevel(level);
+        long started = System.nanoTime();
+        CycleLog cycle = CycleLog.start("benchmark");
+        int[] accepted = new int[1];
+        tumblrService.fetchByTags(tags, batch -> accepted[0] += tumblrService.filterNewPosts(batch).size());
+        cycle.finish(cycleLog, Duration.ofNanos(System.nanoTime() - started));
+        long elapsed = System.nanoTime() - started;
+
+        assertEquals(TAGS * POSTS_PER_TAG, accepted[0]);
+        return elapsed;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    @Test
+    void cycleTimeWithLoggingOnAndOff() {
+        long[] debug = new long[ROUNDS - 1];
+        long[] off = new long[ROUNDS - 1];
+        for (int round = 0; round < ROUNDS; round++) {
+            long withLogs = runCycle(Level.DEBUG);
+            long withoutLogs = runCycle(Level.OFF);
+            if (round > 0) {
+                debug[round - 1] = withLogs;
+                off[round - 1] = withoutLogs;
+            }
+        }
+
+        log.info("Цикл {} тегов x {} постов: DEBUG {} мс, OFF {} мс (медиана {} прогонов)", TAGS, POSTS_PER_TAG,
+                Duration.ofNanos(median(debug)).toMillis(), Duration.ofNanos(median(off)).toMillis(), ROUNDS - 1);
+    }
+}
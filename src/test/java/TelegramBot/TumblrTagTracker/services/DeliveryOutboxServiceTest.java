@@ -0,0 +1,120 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.models.DeliveryOutbox;
+import TelegramBot.TumblrTagTracker.repositories.DeliveryOutboxRepository;
+import TelegramBot.TumblrTagTracker.util.PostJsonCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.outboxRow;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DeliveryOutboxServiceTest {
+
+    private final DeliveryOutboxRepository repository = mock(DeliveryOutboxRepository.class);
+    private final DeliveryOutboxService service = new DeliveryOutboxService(repository, new PostJsonCodec());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "lease", Duration.ofMinutes(5));
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    // Кандидаты в порядке, в котором их отдаёт findFairCandidateIds; все строки удалось заблокировать
+    private void candidates(DeliveryOutbox... rows) {
+        when(repository.findFairCandidateIds(any(), anyInt(), anyInt()))
+                .thenReturn(Arrays.stream(rows).map(DeliveryOutbox::getId).toList());
+        when(repository.findByIdsForUpdate(anyCollection(), eq(DeliveryOutbox.Status.PENDING)))
+                .thenReturn(List.of(rows));
+    }
+
+    private static List<Long> ids(List<DeliveryOutbox> rows) {
+        return rows.stream().map(DeliveryOutbox::getId).toList();
+    }
+
+    @Test
+    void instantUserGetsOneRowPerClaim() {
+        candidates(outboxRow(1, 10, false), outboxRow(2, 10, false), outboxRow(3, 20, false));
+
+        assertEquals(List.of(1L, 3L), ids(service.claimDue(5)));
+    }
+
+    @Test
+    void digestUserGetsWholeDigestAsOneUnit() {
+        candidates(outboxRow(1, 10, true), outboxRow(2, 10, true), outboxRow(3, 10, true), outboxRow(4, 20, false));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(service.claimDue(2)));
+    }
+
+    @Test
+    void digestIsCappedAtMediaGroupSize() {
+        DeliveryOutbox[] rows = new DeliveryOutbox[DeliveryOutboxService.MAX_DIGEST_SIZE + 2];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = outboxRow(i + 1, 10, true);
+        }
+        candidates(rows);
+
+        assertEquals(DeliveryOutboxService.MAX_DIGEST_SIZE, service.claimDue(1).size());
+    }
+
+    @Test
+    void claimStopsAtMaxUnitsOfUsers() {
+        candidates(outboxRow(1, 10, false), outboxRow(2, 20, false), outboxRow(3, 30, false));
+
+        assertEquals(List.of(1L, 2L), ids(service.claimDue(2)));
+    }
+
+    @Test
+    void unitDoesNotMixInstantAndDigestRows() {
+        candidates(outboxRow(1, 10, true), outboxRow(2, 10, true), outboxRow(3, 10, false), outboxRow(4, 10, true),
+                outboxRow(5, 20, false), outboxRow(6, 20, true));
+
+        assertEquals(List.of(1L, 2L, 5L), ids(service.claimDue(5)));
+    }
+
+    @Test
+    void rowsLockedByAnotherInstanceAreSkipped() {
+        DeliveryOutbox first = outboxRow(1, 10, false);
+        DeliveryOutbox second = outboxRow(2, 20, false);
+        when(repository.findFairCandidateIds(any(), anyInt(), anyInt())).thenReturn(List.of(1L, 2L));
+        when(repository.findByIdsForUpdate(anyCollection(), eq(DeliveryOutbox.Status.PENDING)))
+                .thenReturn(List.of(second));
+
+        assertEquals(List.of(2L), ids(service.claimDue(5)));
+        assertEquals(DeliveryOutbox.Status.PENDING, first.getStatus());
+    }
+
+    @Test
+    void claimedRowsAreLeasedAfterExpiredLeasesAreReleased() {
+        candidates(outboxRow(1, 10, false));
+
+        List<DeliveryOutbox> claimed = service.claimDue(1);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).releaseExpiredLeases(eq(DeliveryOutbox.Status.PENDING),
+                eq(DeliveryOutbox.Status.IN_PROGRESS), any());
+        order.verify(repository).findFairCandidateIds(any(), anyInt(), anyInt());
+
+        DeliveryOutbox row = claimed.get(0);
+        assertEquals(DeliveryOutbox.Status.IN_PROGRESS, row.getStatus());
+        assertNotNull(row.getClaimedBy());
+        assertTrue(row.getLeaseUntil().isAfter(LocalDateTime.now().plusMinutes(4)));
+    }
+
+    @Test
+    void nothingDueClaimsNothing() {
+        when(repository.findFairCandidateIds(any(), anyInt(), anyInt())).thenReturn(List.of());
+
+        assertTrue(service.claimDue(5).isEmpty());
+        verify(repository, never()).findByIdsForUpdate(anyCollection(), any());
+    }
+}
@@ -0,0 +1,59 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.models.TrackedPost;
+import TelegramBot.TumblrTagTracker.repositories.TrackedPostRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FingerprintIndexTest {
+
+    private final TrackedPostRepository repository = mock(TrackedPostRepository.class);
+    private final FingerprintIndex index = new FingerprintIndex(repository, Duration.ofHours(1), 100);
+
+    @Test
+    void registeredPostOwnsItsFingerprint() {
+        when(repository.findFirstByFingerprint("h:1")).thenReturn(Optional.empty());
+
+        assertEquals(0, index.ownerOf(post(1, "h:1")));
+        index.register(post(1, "h:1"));
+
+        assertEquals(1, index.ownerOf(post(2, "h:1")));
+    }
+
+    @Test
+    void firstRegisteredPostStaysOwner() {
+        index.register(post(1, "h:1"));
+        index.register(post(2, "h:1"));
+
+        assertEquals(1, index.ownerOf(post(3, "h:1")));
+    }
+
+    @Test
+    void ownerFromDatabaseIsCached() {
+        when(repository.findFirstByFingerprint("h:1")).thenReturn(Optional.of(new TrackedPost("1")));
+
+        assertEquals(1, index.ownerOf(post(2, "h:1")));
+        assertEquals(1, index.ownerOf(post(3, "h:1")));
+        verify(repository, times(1)).findFirstByFingerprint("h:1");
+    }
+
+    @Test
+    void missingOwnerIsNotCached() {
+        when(repository.findFirstByFingerprint("h:1")).thenReturn(Optional.empty(), Optional.of(new TrackedPost("5")));
+
+        assertEquals(0, index.ownerOf(post(2, "h:1")));
+        assertEquals(5, index.ownerOf(post(2, "h:1")));
+    }
+
+    @Test
+    void postWithoutFingerprintHasNoOwner() {
+        assertEquals(0, index.ownerOf(post(1, null)));
+        verifyNoInteractions(repository);
+    }
+}
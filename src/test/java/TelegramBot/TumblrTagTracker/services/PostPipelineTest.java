@@ -0,0 +1,126 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PostPipelineTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final TumblrService tumblrService = mock(TumblrService.class);
+    private final UserPostTrackingService userPostTrackingService = mock(UserPostTrackingService.class);
+    // Очереди на одну пачку: стадии постоянно упираются друг в друга
+    private final PostPipeline pipeline = new PostPipeline(tumblrService, userPostTrackingService, 1);
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    // Теги - числа, каждый тег отдаёт один пост с id, равным тегу; doAnswer - чтобы можно было перезаписать
+    // заглушку, не вызывая прежнюю
+    private void fetchReturnsOnePostPerTag() {
+        doAnswer(invocation -> {
+            Set<String> tags = invocation.getArgument(0);
+            Consumer<TumblrService.TagBatch> sink = invocation.getArgument(1);
+            for (String tag : tags) {
+                sink.accept(new TumblrService.TagBatch(tag, List.of(post(Long.parseLong(tag)))));
+            }
+            return tags.size();
+        }).when(tumblrService).fetchByTags(anySet(), any());
+    }
+
+    private void everyPostGoesToUser(long userId) {
+        when(userPostTrackingService.selectRecipients(anyList(), any()))
+                .thenAnswer(invocation -> Map.of(userId, invocation.<List<TumblrPostDTO>>getArgument(0)));
+    }
+
+    @Test
+    void everyBatchReachesDeliveryAndRunCompletes() {
+        fetchReturnsOnePostPerTag();
+        when(tumblrService.filterNewPosts(any())).thenAnswer(invocation ->
+                invocation.<TumblrService.TagBatch>getArgument(0).posts());
+        everyPostGoesToUser(1L);
+        List<Long> delivered = new CopyOnWriteArrayList<>();
+
+        PostPipeline.PipelineResult result = assertTimeoutPreemptively(TIMEOUT, () ->
+                pipeline.run(Set.of("1", "2", "3", "4", "5"), null, postsPerUser ->
+                        postsPerUser.get(1L).forEach(post -> delivered.add(post.getId()))));
+
+        assertEquals(new PostPipeline.PipelineResult(5, 5, 5, 5), result);
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L), Set.copyOf(delivered));
+    }
+
+    @Test
+    void failingBatchDoesNotStallOtherStages() {
+        fetchReturnsOnePostPerTag();
+        when(tumblrService.filterNewPosts(any())).thenAnswer(invocation -> {
+            TumblrService.TagBatch batch = invocation.getArgument(0);
+            if (batch.tag().equals("2")) {
+                throw new IllegalStateException("filter failed");
+            }
+            return batch.posts();
+        });
+        everyPostGoesToUser(1L);
+
+        PostPipeline.PipelineResult result = assertTimeoutPreemptively(TIMEOUT, () ->
+                pipeline.run(Set.of("1", "2", "3", "4"), null, postsPerUser -> {
+                }));
+
+        assertEquals(4, result.fetchedPosts());
+        assertEquals(3, result.deliveries());
+    }
+
+    @Test
+    void fetchFailureStillEndsStagesForNextRun() {
+        when(tumblrService.fetchByTags(anySet(), any())).thenAnswer(invocation -> {
+            Consumer<TumblrService.TagBatch> sink = invocation.getArgument(1);
+            sink.accept(new TumblrService.TagBatch("1", List.of(post(1))));
+            throw new IllegalStateException("fetch failed");
+        });
+        when(tumblrService.filterNewPosts(any())).thenAnswer(invocation ->
+                invocation.<TumblrService.TagBatch>getArgument(0).posts());
+        everyPostGoesToUser(1L);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IllegalStateException.class, () ->
+                pipeline.run(Set.of("1"), null, postsPerUser -> {
+                })));
+
+        // Стадии прошлого прогона завершились, иначе новым не хватило бы потоков
+        fetchReturnsOnePostPerTag();
+        PostPipeline.PipelineResult result = assertTimeoutPreemptively(TIMEOUT, () ->
+                pipeline.run(Set.of("2"), null, postsPerUser -> {
+                }));
+
+        assertEquals(1, result.deliveries());
+    }
+
+    @Test
+    void deliverySinkFailureIsContained() {
+        fetchReturnsOnePostPerTag();
+        when(tumblrService.filterNewPosts(any())).thenAnswer(invocation ->
+                invocation.<TumblrService.TagBatch>getArgument(0).posts());
+        everyPostGoesToUser(1L);
+
+        PostPipeline.PipelineResult result = assertTimeoutPreemptively(TIMEOUT, () ->
+                pipeline.run(Set.of("1", "2"), null, postsPerUser -> {
+                    throw new IllegalStateException("outbox down");
+                }));
+
+        assertEquals(2, result.acceptedPosts());
+        assertEquals(0, result.deliveries());
+    }
+}
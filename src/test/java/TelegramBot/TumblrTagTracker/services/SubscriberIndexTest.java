@@ -0,0 +1,113 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriberIndexTest {
+
+    private final TagDictionary dictionary = TagDictionaryTest.inMemoryDictionary();
+
+    private static SubscriptionSnapshot.ActiveSubscription subscription(long chatId, Set<String> tags, Set<String> filters) {
+        return new SubscriptionSnapshot.ActiveSubscription(chatId, tags, filters, false);
+    }
+
+    private SubscriberIndex index(SubscriptionSnapshot.ActiveSubscription... subscriptions) {
+        return SubscriberIndex.build(List.of(subscriptions), dictionary);
+    }
+
+    private Set<Long> recipients(SubscriberIndex index, String... postTags) {
+        Set<Long> chatIds = new HashSet<>();
+        for (int ordinal : index.match(dictionary.idsOf(List.of(postTags)))) {
+            chatIds.add(index.chatIdOf(ordinal));
+        }
+        return chatIds;
+    }
+
+    @Test
+    void postReachesSubscribersOfAnyOfItsTags() {
+        SubscriberIndex index = index(
+                subscription(1, Set.of("art"), Set.of()),
+                subscription(2, Set.of("cats"), Set.of()),
+                subscription(3, Set.of("dogs"), Set.of()));
+
+        assertEquals(Set.of(1L, 2L), recipients(index, "art", "cats"));
+        assertEquals(Set.of(3L), recipients(index, "dogs"));
+    }
+
+    @Test
+    void postWithoutSubscribedTagsMatchesNobody() {
+        SubscriberIndex index = index(subscription(1, Set.of("art"), Set.of()));
+
+        assertTrue(recipients(index, "unrelated").isEmpty());
+        assertTrue(index.match(new int[0]).isEmpty());
+        assertTrue(index.match(null).isEmpty());
+    }
+
+    @Test
+    void filterNeedsAllRequiredTagsAndNoExcludedOnes() {
+        SubscriberIndex index = index(subscription(10, Set.of(), Set.of("fanart AND NOT nsfw")));
+
+        assertEquals(Set.of(10L), recipients(index, "fanart", "sketch"));
+        assertTrue(recipients(index, "fanart", "nsfw").isEmpty());
+        assertTrue(recipients(index, "nsfw").isEmpty());
+    }
+
+    @Test
+    void filterOrIsMatchedPerBranch() {
+        SubscriberIndex index = index(subscription(11, Set.of(), Set.of("(dogs AND puppies) OR kittens")));
+
+        assertTrue(recipients(index, "dogs").isEmpty());
+        assertEquals(Set.of(11L), recipients(index, "dogs", "puppies"));
+        assertEquals(Set.of(11L), recipients(index, "kittens"));
+    }
+
+    @Test
+    void tagSubscribersAndFilterOwnersAreCombined() {
+        SubscriberIndex index = index(
+                subscription(1, Set.of("art"), Set.of()),
+                subscription(2, Set.of("cats"), Set.of("art AND sketch")));
+
+        assertEquals(Set.of(1L), recipients(index, "art"));
+        assertEquals(Set.of(1L, 2L), recipients(index, "art", "sketch"));
+        assertEquals(Set.of(2L), recipients(index, "cats"));
+    }
+
+    @Test
+    void filterBranchIsKeyedBySubscribedTag() {
+        SubscriberIndex index = index(
+                subscription(1, Set.of("art"), Set.of()),
+                subscription(2, Set.of(), Set.of("sketch AND art")));
+
+        assertEquals(Set.of(dictionary.idOf("art")), index.trackedTagIds());
+    }
+
+    @Test
+    void matchDoesNotExposeMutableIndexState() {
+        SubscriberIndex index = index(
+                subscription(1, Set.of("art"), Set.of()),
+                subscription(2, Set.of("art"), Set.of()));
+        int[] post = dictionary.idsOf(List.of("art"));
+
+        RoaringBitmap notDelivered = RoaringBitmap.andNot(index.match(post), RoaringBitmap.bitmapOf(index.ordinalOf(1L)));
+
+        assertEquals(1, notDelivered.getCardinality());
+        assertEquals(2L, index.chatIdOf(notDelivered.first()));
+        assertEquals(Set.of(1L, 2L), recipients(index, "art"));
+    }
+
+    @Test
+    void subscriptionWithoutTagsOrFiltersIsSkipped() {
+        SubscriberIndex index = index(
+                subscription(1, Set.of(), Set.of()),
+                subscription(2, Set.of("art"), Set.of()));
+
+        assertEquals(1, index.size());
+        assertEquals(-1, index.ordinalOf(1L));
+    }
+}
@@ -0,0 +1,77 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.models.Tag;
+import TelegramBot.TumblrTagTracker.repositories.TagRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TagDictionaryTest {
+
+    // Словарь поверх пустой таблицы: новые теги получают id по порядку вставки
+    static TagDictionary inMemoryDictionary() {
+        TagRepository repository = mock(TagRepository.class);
+        AtomicInteger nextId = new AtomicInteger(1);
+        when(repository.findByNameIn(any())).thenReturn(List.of());
+        when(repository.saveAll(any())).thenAnswer(invocation -> {
+            List<Tag> saved = new ArrayList<>();
+            for (Tag tag : invocation.<Iterable<Tag>>getArgument(0)) {
+                tag.setId(nextId.getAndIncrement());
+                saved.add(tag);
+            }
+            return saved;
+        });
+        return new TagDictionary(repository, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void unionMergesSortedArraysWithoutDuplicates() {
+        assertArrayEquals(new int[]{1, 2, 3, 5, 8}, TagDictionary.union(new int[]{1, 3, 5}, new int[]{2, 3, 8}));
+        assertArrayEquals(new int[]{4, 7}, TagDictionary.union(new int[]{4, 7}, new int[]{4, 7}));
+    }
+
+    @Test
+    void unionWithEmptyOrNullReturnsOtherSide() {
+        int[] tags = {1, 2};
+
+        assertSame(tags, TagDictionary.union(tags, new int[0]));
+        assertSame(tags, TagDictionary.union(null, tags));
+        assertArrayEquals(new int[0], TagDictionary.union(null, null));
+    }
+
+    @Test
+    void intersectKeepsCommonIds() {
+        assertArrayEquals(new int[]{3, 8}, TagDictionary.intersect(new int[]{1, 3, 5, 8}, new int[]{2, 3, 8, 9}));
+        assertArrayEquals(new int[0], TagDictionary.intersect(new int[]{1, 2}, new int[]{3, 4}));
+        assertArrayEquals(new int[0], TagDictionary.intersect(null, new int[]{1}));
+    }
+
+    @Test
+    void idsOfAreSortedAndDistinct() {
+        TagDictionary dictionary = inMemoryDictionary();
+
+        int[] ids = dictionary.idsOf(List.of("cats", "art", "cats", " "));
+
+        assertEquals(2, ids.length);
+        assertTrue(ids[0] < ids[1]);
+        assertEquals(List.of("art", "cats"), dictionary.namesOf(new int[]{dictionary.idOf("art"), dictionary.idOf("cats")}));
+    }
+
+    @Test
+    void idsIfKnownDropsUnknownTagsWithoutInsertingThem() {
+        TagDictionary dictionary = inMemoryDictionary();
+        int art = dictionary.idOf("art");
+
+        assertArrayEquals(new int[]{art}, dictionary.idsIfKnown(List.of("art", "never-subscribed")));
+        assertNull(dictionary.idIfKnown("never-subscribed"));
+        assertEquals(1, dictionary.size());
+    }
+}
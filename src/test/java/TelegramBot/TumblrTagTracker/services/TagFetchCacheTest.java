@@ -0,0 +1,134 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagFetchCacheTest {
+
+    private final TagFetchCache cache = new TagFetchCache(null, null, Duration.ofMinutes(4), 100, false);
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private Function<String, List<TumblrPostDTO>> countingFetcher() {
+        return tag -> {
+            fetches.incrementAndGet();
+            return List.of(post(1));
+        };
+    }
+
+    // Запрос в отдельном потоке; fetcher ждёт release, а затем отдаёт результат или бросает failure
+    private CompletableFuture<List<TumblrPostDTO>> leader(String tag, CountDownLatch release, Throwable failure)
+            throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<List<TumblrPostDTO>> result = inThread(() -> cache.get(tag, t -> {
+            fetches.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            return List.of(post(1));
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+
+    // Второй запрос того же тега; возвращается, когда поток встал ждать ведущего
+    private CompletableFuture<List<TumblrPostDTO>> waiter(String tag) throws InterruptedException {
+        CompletableFuture<List<TumblrPostDTO>> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> complete(result, () -> cache.get(tag, countingFetcher())));
+        thread.start();
+        while (thread.isAlive() && thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        return result;
+    }
+
+    private static CompletableFuture<List<TumblrPostDTO>> inThread(Supplier<List<TumblrPostDTO>> call) {
+        CompletableFuture<List<TumblrPostDTO>> result = new CompletableFuture<>();
+        new Thread(() -> complete(result, call)).start();
+        return result;
+    }
+
+    private static void complete(CompletableFuture<List<TumblrPostDTO>> result,
+                                 Supplier<List<TumblrPostDTO>> call) {
+        try {
+            result.complete(call.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    @Test
+    void repeatedRequestIsServedFromCache() {
+        List<TumblrPostDTO> first = cache.get("art", countingFetcher());
+        List<TumblrPostDTO> second = cache.get("art", countingFetcher());
+
+        assertSame(first, second);
+        assertEquals(1, fetches.get());
+        cache.get("cats", countingFetcher());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void concurrentRequestsShareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<List<TumblrPostDTO>> leader = leader("art", release, null);
+        CompletableFuture<List<TumblrPostDTO>> waiter = waiter("art");
+        release.countDown();
+
+        assertSame(leader.get(5, TimeUnit.SECONDS), waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void failureReleasesWaitersAndIsNotCached() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("api down");
+
+        CompletableFuture<List<TumblrPostDTO>> leader = leader("art", release, failure);
+        CompletableFuture<List<TumblrPostDTO>> waiter = waiter("art");
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, fetches.get());
+
+        cache.get("art", countingFetcher());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void errorAlsoReleasesWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AssertionError failure = new AssertionError("fetcher crashed");
+
+        CompletableFuture<List<TumblrPostDTO>> leader = leader("art", release, failure);
+        CompletableFuture<List<TumblrPostDTO>> waiter = waiter("art");
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, fetches.get());
+    }
+}
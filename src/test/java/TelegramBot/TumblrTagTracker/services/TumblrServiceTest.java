@@ -0,0 +1,79 @@
+package TelegramBot.TumblrTagTracker.services;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import TelegramBot.TumblrTagTracker.models.TrackedPost;
+import TelegramBot.TumblrTagTracker.repositories.TrackedPostRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.post;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TumblrServiceTest {
+
+    private final TrackedPostRepository trackedPostRepository = mock(TrackedPostRepository.class);
+    private final PostTrackingService postTrackingService = mock(PostTrackingService.class);
+    private TumblrService tumblrService;
+
+    @BeforeEach
+    void setUp() {
+        when(trackedPostRepository.findFirstByFingerprint(any())).thenReturn(Optional.empty());
+        when(postTrackingService.shouldSendPostNow(any())).thenReturn(true);
+        tumblrService = new TumblrService(mock(TumblrClientPool.class), postTrackingService,
+                mock(TagHealthTracker.class), new FingerprintIndex(trackedPostRepository, Duration.ofHours(1), 100),
+                mock(TagFetchCache.class));
+    }
+
+    @Test
+    void reblogInSameBatchFoldsItsTagsIntoOriginal() {
+        TumblrPostDTO original = post(1, "h:a", 1, 2);
+        TumblrPostDTO reblog = post(2, "h:a", 2, 3);
+
+        List<TumblrPostDTO> accepted = tumblrService.filterNewPosts(
+                new TumblrService.TagBatch("cats", List.of(original, reblog)));
+
+        assertEquals(1, accepted.size());
+        assertEquals(1, accepted.get(0).getId());
+        assertArrayEquals(new int[]{1, 2, 3}, accepted.get(0).getTagIds());
+        verify(postTrackingService, times(1)).shouldSendPostNow(any());
+    }
+
+    @Test
+    void reblogOfTrackedPostGoesUnderOwnerIdWithoutChangingCachedPost() {
+        when(trackedPostRepository.findFirstByFingerprint("h:a")).thenReturn(Optional.of(new TrackedPost("1")));
+        TumblrPostDTO reblog = post(2, "h:a", 3);
+
+        List<TumblrPostDTO> accepted = tumblrService.filterNewPosts(
+                new TumblrService.TagBatch("sketch", List.of(reblog)));
+
+        assertEquals(1, accepted.size());
+        assertEquals(1, accepted.get(0).getId());
+        assertArrayEquals(new int[]{3}, accepted.get(0).getTagIds());
+        assertEquals(2, reblog.getId());
+    }
+
+    @Test
+    void postsWithDifferentContentStaySeparate() {
+        List<TumblrPostDTO> accepted = tumblrService.filterNewPosts(new TumblrService.TagBatch("art", List.of(
+                post(1, "h:a", 1),
+                post(2, "h:b", 1))));
+
+        assertEquals(List.of(1L, 2L), accepted.stream().map(TumblrPostDTO::getId).toList());
+    }
+
+    @Test
+    void rejectedPostIsNotAccepted() {
+        when(postTrackingService.shouldSendPostNow(any())).thenReturn(false);
+
+        List<TumblrPostDTO> accepted = tumblrService.filterNewPosts(new TumblrService.TagBatch("art", List.of(
+                post(1, "h:a", 1))));
+
+        assertTrue(accepted.isEmpty());
+    }
+}
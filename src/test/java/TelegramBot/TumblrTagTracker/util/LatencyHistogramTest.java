@@ -0,0 +1,63 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(Duration.ZERO, histogram.percentile(0.99));
+    }
+
+    @Test
+    void percentileIsUpperBoundOfPowerOfTwoBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofSeconds(1));
+        histogram.record(Duration.ofSeconds(2));
+        histogram.record(Duration.ofSeconds(3));
+        histogram.record(Duration.ofSeconds(100));
+
+        assertEquals(4, histogram.count());
+        assertEquals(Duration.ofMillis(1024), histogram.percentile(0.25));
+        assertEquals(Duration.ofMillis(2048), histogram.percentile(0.5));
+        assertEquals(Duration.ofMillis(4096), histogram.percentile(0.75));
+        assertEquals(Duration.ofMillis(131072), histogram.percentile(0.99));
+    }
+
+    @Test
+    void subSecondLatenciesAreDistinguished() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(Duration.ofMillis(5));
+        }
+        histogram.record(Duration.ofMillis(1900));
+
+        assertEquals(Duration.ofMillis(8), histogram.percentile(0.5));
+        assertEquals(Duration.ofMillis(8), histogram.percentile(0.99));
+        assertEquals(Duration.ofMillis(2048), histogram.percentile(1.0));
+    }
+
+    @Test
+    void zeroAndNegativeLatenciesFallIntoFirstBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofNanos(300_000));
+        histogram.record(Duration.ofSeconds(-5));
+
+        assertEquals(Duration.ofMillis(1), histogram.percentile(1.0));
+    }
+
+    @Test
+    void veryLongLatenciesAreClampedToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofDays(365));
+
+        assertEquals(Duration.ofMillis(1L << 30), histogram.percentile(0.5));
+    }
+}
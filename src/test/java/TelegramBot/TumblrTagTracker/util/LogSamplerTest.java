@@ -0,0 +1,35 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSamplerTest {
+
+    @Test
+    void allowsLimitEventsPerWindowAndCountsTheRest() {
+        LogSampler sampler = new LogSampler(2, Duration.ofHours(1));
+
+        assertTrue(sampler.sample());
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+        assertFalse(sampler.sample());
+
+        assertEquals(2, sampler.drainSuppressed());
+        assertEquals(0, sampler.drainSuppressed());
+    }
+
+    @Test
+    void newWindowAllowsEventsAgain() throws InterruptedException {
+        LogSampler sampler = new LogSampler(1, Duration.ofMillis(20));
+
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+        Thread.sleep(40);
+
+        assertTrue(sampler.sample());
+        assertEquals(1, sampler.drainSuppressed());
+    }
+}
@@ -0,0 +1,55 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import TelegramBot.TumblrTagTracker.dto.TumblrPostDTO;
+import org.junit.jupiter.api.Test;
+
+import static TelegramBot.TumblrTagTracker.TestFixtures.postWithBody;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostFingerprintTest {
+
+    @Test
+    void reblogRootIdIsPreferred() {
+        TumblrPostDTO reblog = postWithBody(2, "<p>any text</p>");
+        reblog.setRebloggedRootId(1);
+
+        assertEquals("r:1", PostFingerprint.of(reblog));
+    }
+
+    @Test
+    void sameContentWithDifferentMarkupCollapses() {
+        TumblrPostDTO original = postWithBody(1, "<p>Hello   <b>World</b></p>");
+        TumblrPostDTO reblog = postWithBody(2, "<div>hello world</div>");
+
+        assertEquals(PostFingerprint.of(original), PostFingerprint.of(reblog));
+        assertTrue(PostFingerprint.of(original).startsWith("h:"));
+    }
+
+    @Test
+    void differentContentDoesNotCollapse() {
+        assertNotEquals(PostFingerprint.of(postWithBody(1, "<p>first</p>")), PostFingerprint.of(postWithBody(2, "<p>second</p>")));
+    }
+
+    @Test
+    void postsDifferingAfterMessageLimitDoNotCollapse() {
+        String prefix = "x".repeat(1000);
+
+        assertNotEquals(PostFingerprint.of(postWithBody(1, prefix + " ending one")),
+                PostFingerprint.of(postWithBody(2, prefix + " ending two")));
+    }
+
+    @Test
+    void differentMediaDoesNotCollapse() {
+        TumblrPostDTO first = postWithBody(1, null);
+        first.setPhotoUrl("https://media.tumblr.com/a.jpg");
+        TumblrPostDTO second = postWithBody(2, null);
+        second.setPhotoUrl("https://media.tumblr.com/b.jpg");
+
+        assertNotEquals(PostFingerprint.of(first), PostFingerprint.of(second));
+    }
+
+    @Test
+    void postWithoutContentKeepsItsOwnId() {
+        assertEquals("p:7", PostFingerprint.of(postWithBody(7, null)));
+    }
+}
@@ -0,0 +1,104 @@
+package TelegramBot.TumblrTagTracker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagExpressionTest {
+
+    @Test
+    void adjacentTagsAreJoinedWithAnd() {
+        TagExpression expression = TagExpression.parse(List.of("fanart", "NOT", "nsfw"));
+
+        assertEquals(List.of(new TagExpression.Clause(Set.of("fanart"), Set.of("nsfw"))), expression.clauses());
+        assertEquals("fanart AND NOT nsfw", expression.toString());
+    }
+
+    @Test
+    void argumentsAreLowercasedAndParenthesesDetached() {
+        TagExpression expression = TagExpression.parse(List.of("(Art", "OR", "Sketch)", "cats"));
+
+        assertEquals(Set.of("art", "sketch", "cats"), expression.tags());
+        assertEquals(2, expression.clauses().size());
+    }
+
+    @Test
+    void canonicalFormParsesBackToSameExpression() {
+        TagExpression expression = TagExpression.parse(
+                List.of("lord of the mysteries", "(fanart", "OR", "and)", "NOT", "a(b)c"));
+
+        TagExpression restored = TagExpression.parse(expression.toString());
+
+        assertEquals(expression, restored);
+        assertEquals(expression.clauses().size(), restored.clauses().size());
+        assertTrue(restored.tags().contains("a(b)c"));
+    }
+
+    @Test
+    void quoteInsideTagIsRejected() {
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse(List.of("say\"hi")));
+    }
+
+    @Test
+    void orInsideAndIsDistributed() {
+        TagExpression expression = TagExpression.parse("(a OR b) AND (c OR d)");
+
+        assertEquals(Set.of(
+                new TagExpression.Clause(Set.of("a", "c"), Set.of()),
+                new TagExpression.Clause(Set.of("a", "d"), Set.of()),
+                new TagExpression.Clause(Set.of("b", "c"), Set.of()),
+                new TagExpression.Clause(Set.of("b", "d"), Set.of())), Set.copyOf(expression.clauses()));
+    }
+
+    @Test
+    void negatedGroupFollowsDeMorgan() {
+        TagExpression expression = TagExpression.parse("a AND NOT (b OR c)");
+
+        assertEquals(List.of(new TagExpression.Clause(Set.of("a"), Set.of("b", "c"))), expression.clauses());
+    }
+
+    @Test
+    void contradictoryBranchIsDropped() {
+        TagExpression expression = TagExpression.parse("(a AND NOT a) OR b");
+
+        assertEquals(List.of(new TagExpression.Clause(Set.of("b"), Set.of())), expression.clauses());
+    }
+
+    @Test
+    void fullyContradictoryExpressionIsRejected() {
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("a AND NOT a"));
+    }
+
+    @Test
+    void branchWithoutRequiredTagIsRejected() {
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("a OR NOT b"));
+    }
+
+    @Test
+    void clauseLimitIsEnforced() {
+        // (t0 OR u0) AND (t1 OR u1) ... даёт 2^n веток
+        assertEquals(16, TagExpression.parse(alternatives(4)).clauses().size());
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse(alternatives(5)));
+    }
+
+    @Test
+    void malformedExpressionsAreRejected() {
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse(""));
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("(a OR b"));
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("a OR"));
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("a)"));
+        assertThrows(InvalidTagExpressionException.class, () -> TagExpression.parse("\"a b"));
+    }
+
+    private static String alternatives(int groups) {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < groups; i++) {
+            parts.add("(t" + i + " OR u" + i + ")");
+        }
+        return String.join(" AND ", parts);
+    }
+}